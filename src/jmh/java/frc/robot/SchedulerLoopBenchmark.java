@@ -0,0 +1,85 @@
+package frc.robot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+/*
+ * Measures what one pass of the CommandScheduler costs with the real RobotContainer, meaning
+ * every subsystem, default command and button binding from configureBindings is active.
+ *
+ * The robot is put in enabled teleop through the simulated driver station, with the driver
+ * pushing the stick and (optionally) the operator holding the rollers and lead screw buttons,
+ * so the bindings actually have commands to run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerLoopBenchmark {
+    @Param({"false", "true"})
+    public boolean operatorButtonsHeld;
+
+    private RobotContainer robotContainer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setEnabled(true);
+
+        DriverStationSim.setJoystickAxisCount(Constants.kDriverUSB, 4);
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 0, .25);
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 1, -.5);
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 2, .1);
+
+        DriverStationSim.setJoystickAxisCount(Constants.kSecondaryUSB, 4);
+        DriverStationSim.setJoystickAxis(Constants.kSecondaryUSB, Constants.kArmUpDownAxis, .4);
+        DriverStationSim.setJoystickAxis(Constants.kSecondaryUSB, Constants.kHeadUpDownAxis, -.3);
+
+        DriverStationSim.setJoystickButtonCount(Constants.kSecondaryUSB, 12);
+        if (operatorButtonsHeld) {
+            DriverStationSim.setJoystickButtons(Constants.kSecondaryUSB,
+                (1 << (Constants.kLeadScrewUpButton - 1)) | (1 << (Constants.kHeadRollersInButton - 1)));
+        }
+
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+
+        robotContainer = new RobotContainer();
+        robotContainer.captureInputs();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CommandScheduler.getInstance().cancelAll();
+        CommandScheduler.getInstance().unregisterAllSubsystems();
+        CommandScheduler.getInstance().getActiveButtonLoop().clear();
+    }
+
+    @Benchmark
+    public void schedulerRun() {
+        CommandScheduler.getInstance().run();
+    }
+}
@@ -0,0 +1,80 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants;
+
+/*
+ * Measures handing a speed to the lead screw through the command from LeadScrew.setSpeed, plus
+ * one pass of the lead screw's fast loop, which is where the limit switch checks happen. The
+ * switches are driven through DIOSim, so every branch of the up/down/stopped logic can be
+ * measured on its own. The lead screw's Notifier is stopped first, so the benchmark thread is the
+ * only one running the fast loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeadScrewBenchmark {
+    @Param({"1", "-1", "0"})
+    public double speed;
+
+    @Param({"false", "true"})
+    public boolean switchPressed;
+
+    private LeadScrew leadScrew;
+    private Command setSpeed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        // The fast loop holds the motor at 0 while disabled
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+
+        leadScrew = new LeadScrew();
+        leadScrew.stopFastLoop();
+
+        new DIOSim(Constants.kLeadScrewUpLimitDIO).setValue(switchPressed);
+        new DIOSim(Constants.kLeadScrewDownLimitDIO).setValue(switchPressed);
+
+        setSpeed = leadScrew.setSpeed(() -> speed);
+        setSpeed.initialize();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CommandScheduler.getInstance().unregisterAllSubsystems();
+    }
+
+    @Benchmark
+    public void setSpeedAndFastLoop() {
+        setSpeed.execute();
+        leadScrew.fastLoop();
+    }
+}
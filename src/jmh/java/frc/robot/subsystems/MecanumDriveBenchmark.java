@@ -0,0 +1,96 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.drive.MecanumDrive;
+import edu.wpi.first.wpilibj.motorcontrol.Talon;
+import frc.robot.Constants;
+import frc.robot.util.MecanumOutputStage;
+
+/*
+ * Measures a single MecanumDrive.driveCartesian call, wired up the same way the Drivetrain
+ * subsystem used to wire it, next to the MecanumOutputStage that replaced it writing the same
+ * four Talons. The inputs change every call so nothing can be skipped as "same as last time".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MecanumDriveBenchmark {
+    private Talon frontLeft;
+    private Talon frontRight;
+    private Talon rearLeft;
+    private Talon rearRight;
+
+    private MecanumDrive drive;
+    private MecanumOutputStage outputStage;
+
+    private double phase;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        frontLeft = new Talon(Constants.kFrontLeftPWMID);
+        frontRight = new Talon(Constants.kFrontRightPWMID);
+        rearLeft = new Talon(Constants.kRearLeftPWMID);
+        rearRight = new Talon(Constants.kRearRightPWMID);
+
+        frontRight.setInverted(true);
+        rearRight.setInverted(true);
+
+        drive = new MecanumDrive(frontLeft, rearLeft, frontRight, rearRight);
+        drive.setSafetyEnabled(false);
+
+        outputStage = new MecanumOutputStage(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        drive.close();
+        frontLeft.close();
+        frontRight.close();
+        rearLeft.close();
+        rearRight.close();
+    }
+
+    @Benchmark
+    public void driveCartesian() {
+        phase += .01;
+        if (phase > 1) {
+            phase = -1;
+        }
+
+        drive.driveCartesian(phase, -.5 * phase, .25);
+    }
+
+    @Benchmark
+    public void outputStage() {
+        phase += .01;
+        if (phase > 1) {
+            phase = -1;
+        }
+
+        outputStage.calculate(phase, -.5 * phase, .25);
+        frontLeft.set(outputStage.getFrontLeft());
+        frontRight.set(outputStage.getFrontRight());
+        rearLeft.set(outputStage.getRearLeft());
+        rearRight.set(outputStage.getRearRight());
+    }
+}
@@ -1,5 +1,7 @@
 package frc.robot;
 
+import frc.robot.camera.StreamProfile;
+
 public class Constants {
     public static final int kFrontLeftPWMID = 2;
     public static final int kFrontRightPWMID = 3;
@@ -13,10 +15,23 @@ public class Constants {
     public static final int kLeadScrewUpLimitDIO = 0;
     public static final int kLeadScrewDownLimitDIO = 1;
 
+    public static final int kArmPotentiometerAnalog = 0;
+    public static final int kHeadPivotPotentiometerAnalog = 1;
+
     public static final int kLeadScrewShifterH = 0;
     public static final int kLeadScrewShifterL = 1;
 
     public static final double kDeadband = .05;
+    public static final double kDriveTwistScale = .5; //Rotation is limited to 50% to make it easier to control
+    public static final double kArmSpeedScale = .75;
+    public static final double kHeadPivotSpeedScale = .6;
+    public static final double kHeadRollersInSpeed = .7;
+    public static final double kHeadRollersOutSpeed = .4;
+    public static final double kTuningSavePeriodSeconds = 5; //Dashboard changes are written to tuning.properties at most this often
+
+    public static final String kDefaultAutoRoutine = "DriveForward"; //Profile picked in the chooser unless someone picks another
+    public static final double kAutoPlaybackRate = 1; //1 plays profiles as recorded, 2 drives the same path in half the time
+    public static final double kAutoMinCompensatedVolts = 10; //Voltage compensation stops here, profiles are sped up only as far as this voltage can keep up with
 
     public static final int kLeadScrewUpButton = 8;
     public static final int kLeadScrewDownButton = 6;
@@ -26,7 +41,164 @@ public class Constants {
     public static final int kHeadRollersOutButton = 4; //limited to 40$ and inverted
     public static final int kShifterHighButton = 10;
     public static final int kShifterLowButton = 9;
+    public static final int kAutoShiftButton = 7; //Toggles automatic shifting, the manual shift buttons also turn it off
+    public static final int kStowPresetButton = 1; //Moves the arm and head to their stowed positions
+    public static final int kFloorPickupPresetButton = 3;
+    public static final int kScorePresetButton = 5;
+    public static final int kIntakeMacroButton = 11; //Hold to lower the arm and head and run the rollers in
+    public static final int kStowMacroButton = 12; //Stows the arm and head and runs the lead screw all the way down
+
+    public static final int kFieldOrientedButton = 2; //On the driver joystick, toggles field-oriented driving
+    public static final int kAlignToTargetButton = 1; //On the driver joystick, hold to turn toward the game piece
 
     public static final int kDriverUSB = 0;
     public static final int kSecondaryUSB = 1;
+
+    public static final int kStageTimerSamples = 256; //How many samples each StageTimer keeps
+    public static final int kStageTimerPublishPeriod = 50; //Samples between NetworkTables updates, 50 is about once a second
+    public static final double kCommandBudgetSeconds = .001; //Any single subsystem command taking longer than this counts as an overrun
+
+    public static final int kTelemetryLogMaxChannels = 64;
+    public static final int kLoggedJoystickAxes = 6;
+    public static final double kTelemetryLogBudgetSeconds = .0002; //The telemetry log gets at most 200us of each loop
+    public static final String kSimulationLogDirectory = "build/logs"; //Where the log files go in simulation and tests, relative to the project
+
+    public static final int kTelemetryPublisherMaxTopics = 64;
+    public static final double kTelemetryPublishBudgetSeconds = .0002; //Dashboard publishing gets at most 200us of each loop
+    public static final double kDebugTopicPeriodSeconds = .1; //Debug tab values update at most 10 times a second
+
+    public static final int kWarmUpPasses = 20000; //Enough runs of every command for the JIT to fully compile them
+    public static final double kWarmUpBudgetSeconds = .005; //Warming up gets at most 5ms of each disabled loop
+
+    public static final double kLoopShedThreshold = .8; //Loops using more than this fraction of the period start shedding work
+    public static final double kLoopRecoverThreshold = .5; //Loops need to stay under this fraction of the period to recover
+    public static final int kLoopRecoverLoops = 50; //How many loops in a row under the recover threshold before one level comes back
+    public static final int kLoopWatchdogMaxStages = 64;
+    public static final double kLoopWatchdogReportPeriodSeconds = 5; //At most one overrun breakdown this often, the first one always goes out
+
+    public static final boolean kAllocationProbeOnRobot = false; //Count allocated bytes on the real robot too, it's always on in simulation
+
+    public static final double kDriveDeadband = .02; //The same deadband MecanumDrive used on the forward and strafe axes
+    public static final double kDriveForwardSlewRate = 3; //How fast each drive input can change, in full speeds per second
+    public static final double kDriveStrafeSlewRate = 3; //Mecanum rollers slip easily sideways, so strafe ramps like forward
+    public static final double kDriveRotationSlewRate = 6;
+    public static final int kPDPCANID = 0;
+    public static final double kPowerLookaheadSeconds = .1; //How far ahead a falling battery voltage is projected
+    public static final double kPowerSlopeFilter = .2; //How much of each loop's voltage slope is blended into the average
+    public static final double kPowerCompressorOffVolts = 10; //Compressor is turned off below this predicted voltage
+    public static final double kPowerCompressorOnVolts = 11; //And only turned back on above this one
+    public static final double kPowerCompressorOffAmps = 200; //Or when the whole robot is pulling more than this
+    public static final double kPowerCompressorHoldSeconds = 1; //How long things need to be fine before the compressor comes back
+    public static final double kPowerLowPriorityFullVolts = 9.5; //Rollers and head pivot start scaling down below this
+    public static final double kPowerLowPriorityMinVolts = 8; //And are fully off at this
+    public static final double kPowerMediumPriorityFullVolts = 8.5; //The arm starts scaling down below this
+    public static final double kPowerMediumPriorityMinVolts = 7.3; //And is fully off at this, the roboRIO browns out at 6.8V
+    public static final double kPowerScaleRecoveryPerSecond = .5;
+    public static final int kPowerPublishPeriod = 10;
+
+    //Arm and head pivot angles are in degrees, 0 is level with the floor and up is positive. The head is measured from the arm.
+    //The angles and gains below are estimates and need checking on the robot.
+    public static final double kArmPotentiometerRangeDegrees = 270; //How far the potentiometer turns from 0V to 5V
+    public static final double kArmPotentiometerOffsetDegrees = -135; //The arm angle when the potentiometer reads 0V
+    public static final double kArmStowDegrees = 90;
+    public static final double kArmFloorPickupDegrees = -30;
+    public static final double kArmScoreDegrees = 45;
+    public static final double kArmMaxVelocityDegreesPerSecond = 120;
+    public static final double kArmMaxAccelerationDegreesPerSecondSquared = 360;
+    public static final double kArmKS = .1; //Volts to get it moving
+    public static final double kArmKG = .4; //Volts to hold it level against gravity
+    public static final double kArmKV = 3.2; //Volts per radian per second
+    public static final double kArmKA = .05; //Volts per radian per second squared
+    public static final double kArmKP = 8; //Volts per radian of error
+
+    public static final double kHeadPivotPotentiometerRangeDegrees = 270;
+    public static final double kHeadPivotPotentiometerOffsetDegrees = -135;
+    public static final double kHeadPivotStowDegrees = 0;
+    public static final double kHeadPivotFloorPickupDegrees = -50;
+    public static final double kHeadPivotScoreDegrees = -45;
+    public static final double kHeadPivotMaxVelocityDegreesPerSecond = 240;
+    public static final double kHeadPivotMaxAccelerationDegreesPerSecondSquared = 900;
+    public static final double kHeadPivotKS = .1;
+    public static final double kHeadPivotKG = .7;
+    public static final double kHeadPivotKV = .9;
+    public static final double kHeadPivotKA = .02;
+    public static final double kHeadPivotKP = 6;
+
+    public static final double kPresetToleranceDegrees = 3; //Close enough to count as at the preset
+
+    public static final double kSysIdSamplePeriodSeconds = .001; //1kHz
+    public static final int kSysIdMaxSamples = 20000; //20 seconds at 1kHz, the buffers are made this big once at startup
+    public static final double kSysIdRampVoltsPerSecond = 1; //How fast the quasistatic tests raise the voltage
+    public static final double kSysIdQuasistaticSeconds = 10;
+    public static final double kSysIdDynamicSeconds = 3;
+    public static final double kSysIdDriveStepVolts = 7;
+    public static final double kSysIdLeadScrewStepVolts = 7;
+    public static final double kSysIdArmStepVolts = 4;
+    public static final double kSysIdArmMinDegrees = -30; //The arm tests stop here going down
+    public static final double kSysIdArmMaxDegrees = 95; //And here going up
+    public static final int kSysIdVelocityWindowSamples = 20; //With no velocity sensor, velocity is the change in position across this many samples (20ms), one sample apart is mostly potentiometer noise
+
+    public static final double kMotorOutputEpsilon = .001; //Motor values closer than this to the last written value aren't rewritten
+
+    public static final double kLeadScrewLoopPeriodSeconds = .004; //250Hz lead screw control loop
+    public static final double kLeadScrewJitterBudgetSeconds = .001; //Fast loop runs further than this from schedule count as overruns
+
+    public static final boolean kLeadScrewAutoShiftByDefault = false; //Leave off until the PDP channels below are checked against the wiring
+    public static final int kLeadScrewPDPChannelA = 12; //The two lead screw CIMs, check these against the wiring
+    public static final int kLeadScrewPDPChannelB = 13;
+    public static final double kLeadScrewStallAmps = 262; //Two CIMs at 12V
+    public static final double kAutoShiftMinOutput = .2; //Below this output there isn't enough current to judge the load, so the gear is left alone
+    public static final double kAutoShiftCurrentCheckOutput = .5; //At or above this output the motors always draw current...
+    public static final double kAutoShiftMinCurrentAmps = 1; //...so less than this means the reading is wrong, and the gear is held
+    public static final double kAutoShiftHysteresis = .08; //How far either side of the break even load the shift points sit
+    public static final double kAutoShiftFilterSeconds = .2; //Smooths the load estimate so a current spike doesn't shift
+    public static final double kAutoShiftMinIntervalSeconds = .75; //Never shift more often than this
+
+    public static final StreamProfile kDefaultStreamProfile = StreamProfile.MEDIUM;
+    public static final double kCameraBandwidthBudgetMbps = 3; //The field allows 4Mbps total, leave room for everything else
+    public static final int kCameraMeasurePeriod = 50; //Loops between camera bitrate measurements, about once a second
+    public static final int kCameraOverBudgetMeasurements = 3; //Measurements in a row over budget before stepping down
+    public static final double kCameraStepUpFraction = .5; //Step back up only while using less than this much of the budget
+    public static final int kCameraUnderBudgetMeasurements = 10; //Measurements in a row under that before stepping up
+
+    public static final double kVisionHueMin = 5; //HSV range for the orange game piece, OpenCV hue goes from 0 to 180
+    public static final double kVisionHueMax = 25;
+    public static final double kVisionSaturationMin = 120;
+    public static final double kVisionSaturationMax = 255;
+    public static final double kVisionValueMin = 100;
+    public static final double kVisionValueMax = 255;
+    public static final double kVisionMinAreaFraction = .002; //Smaller blobs than this fraction of the frame are noise
+    public static final double kVisionFrameTimeoutSeconds = .5;
+    public static final double kVisionMaxFrameAgeSeconds = .1; //Frames older than this when grabbed are dropped
+    public static final double kVisionMaxResultAgeSeconds = .2; //Older results aren't used for aligning
+    public static final double kVisionBudgetSeconds = .02;
+    public static final int kVisionPublishPeriod = 10; //Frames between NetworkTables updates
+    public static final double kVisionAlignP = .6; //Rotation output per unit of targetX when aligning
+
+    //These are only used by the simulation models, they're estimates, not measurements
+    public static final double kDriveFreeSpeedMetersPerSecond = 4; //CIM through a 10.71:1 gearbox on 6in wheels
+    public static final double kDriveWheelTimeConstantSeconds = .1;
+    public static final double kDriveTrackWidthMeters = .55;
+    public static final double kDriveWheelBaseMeters = .5;
+    public static final double kLeadScrewTravelMeters = .6;
+    public static final double kLeadScrewHighGearSpeedMetersPerSecond = .3;
+    public static final double kLeadScrewLowGearSpeedMetersPerSecond = .1;
+    public static final double kLeadScrewTimeConstantSeconds = .05;
+    public static final double kSimLeadScrewSlackMeters = .15; //The first bit of travel up is unloaded, then it starts lifting
+    public static final double kSimLeadScrewLiftLoad = .9; //Lifting takes this fraction of the high gear stall torque
+    public static final double kSimBatteryOpenCircuitVolts = 12.5;
+    public static final double kSimBatteryResistanceOhms = .02; //A healthy battery plus the main breaker and wiring
+    public static final double kSimBatteryTimeConstantSeconds = .05;
+    public static final double kSimMechanismAmps = 30; //Rough current at full output for the rollers
+    public static final double kSimArmGearing = 150; //One CIM through a 150:1 reduction
+    public static final double kSimArmLengthMeters = .6;
+    public static final double kSimArmMassKg = 4;
+    public static final double kSimArmMinDegrees = -40;
+    public static final double kSimArmMaxDegrees = 100;
+    public static final double kSimHeadPivotGearing = 100; //One BAG motor through a 100:1 reduction
+    public static final double kSimHeadPivotLengthMeters = .25;
+    public static final double kSimHeadPivotMassKg = 2;
+    public static final double kSimHeadPivotMinDegrees = -120;
+    public static final double kSimHeadPivotMaxDegrees = 90;
+    public static final double kSimCompressorAmps = 12;
 }
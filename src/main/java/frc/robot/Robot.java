@@ -7,6 +7,10 @@ package frc.robot;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.AllocationProbe;
+import frc.robot.util.LoopWatchdog;
+import frc.robot.util.LoopWatchdog.Sheddable;
+import frc.robot.util.StageTimer;
 
 /*
  * This file is used by Main.java to start your robot program. It is very unlikely
@@ -18,24 +22,103 @@ public class Robot extends TimedRobot {
 
   private RobotContainer m_robotContainer;
 
+  // Times every run of the CommandScheduler, anything over one loop period counts as an overrun
+  private StageTimer m_schedulerTimer;
+
+  // Times all of robotPeriodic, the part of the loop that is our code rather than WPILib's own dashboard updates
+  private StageTimer m_robotPeriodicTimer;
+
+  // Counts the bytes of new objects created by each whole loop, see util/AllocationProbe.java
+  private AllocationProbe m_cycleProbe;
+
+  // Attributes loop time to each stage and command, and sheds low priority work, see util/LoopWatchdog.java
+  private LoopWatchdog m_loopWatchdog;
+
+  /*
+   * Gives the simulation tools (see the sim folder) a way to get at the subsystems
+   */
+  public RobotContainer getRobotContainer() {
+    return m_robotContainer;
+  }
+
   @Override
   public void robotInit() {
     m_robotContainer = new RobotContainer();
+
+    m_schedulerTimer = new StageTimer("Scheduler", getPeriod());
+    m_robotPeriodicTimer = new StageTimer("RobotPeriodic", getPeriod());
+    m_cycleProbe = new AllocationProbe("Robot");
+    m_loopWatchdog = m_robotContainer.getLoopWatchdog();
+
+    m_robotContainer.getTelemetryLog().addDouble("Robot/SchedulerMs", () -> m_schedulerTimer.getLastNanos() / 1e6);
+    m_robotContainer.getTelemetryLog().addInteger("Robot/AllocatedBytes", m_cycleProbe::getLastCycleBytes);
+    m_robotContainer.getTelemetryLog().addInteger("Robot/ShedLevel", m_loopWatchdog::getShedLevel);
+  }
+
+  /*
+   * loopFunc is what TimedRobot calls every loop, it runs the mode's periodic method, then robotPeriodic, then updates
+   * the dashboards. Wrapping it lets the loop watchdog time the whole loop, not just robotPeriodic.
+   */
+  @Override
+  protected void loopFunc() {
+    m_loopWatchdog.startLoop();
+    super.loopFunc();
+    m_loopWatchdog.endLoop();
   }
 
+  /*
+   * The inputs and the CommandScheduler (which sets every motor) always run. The dashboard, camera and log only run
+   * when the loop watchdog says there's time for them, and they're shed in that order.
+   */
   @Override
   public void robotPeriodic() {
+    m_robotPeriodicTimer.start();
+    m_loopWatchdog.mark("ModePeriodic");
+    m_cycleProbe.mark();
+
+    m_robotContainer.captureInputs();
+    m_loopWatchdog.mark("Inputs");
+
+    m_schedulerTimer.start();
     CommandScheduler.getInstance().run();
+    m_schedulerTimer.stop();
+    m_loopWatchdog.mark("Scheduler");
+
+    if (m_loopWatchdog.shouldRun(Sheddable.DASHBOARD)) {
+      m_robotContainer.publishTelemetry();
+    }
+    m_loopWatchdog.mark("Dashboard");
+
+    if (m_loopWatchdog.shouldRun(Sheddable.CAMERA)) {
+      m_robotContainer.updateCamera();
+    }
+    m_loopWatchdog.mark("Camera");
+
+    if (m_loopWatchdog.shouldRun(Sheddable.LOG)) {
+      m_robotContainer.logTelemetry();
+    }
+    m_loopWatchdog.mark("Log");
+
+    // Only does anything in the very first loop, see RobotContainer.configureDashboard()
+    m_robotContainer.configureDashboard();
+    m_robotPeriodicTimer.stop();
   }
 
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    // Read the autonomous profiles now, while nothing is happening, so autonomousInit only has to start the command
+    m_robotContainer.loadAutoRoutines();
+  }
 
   @Override
-  public void disabledPeriodic() {}
+  public void disabledPeriodic() {
+    m_robotContainer.warmUp();
+  }
 
   @Override
-  public void disabledExit() {}
+  public void disabledExit() {
+    m_robotContainer.endWarmUp();
+  }
 
   @Override
   public void autonomousInit() {
@@ -68,6 +151,9 @@ public class Robot extends TimedRobot {
   @Override
   public void testInit() {
     CommandScheduler.getInstance().cancelAll();
+
+    // The SysId buttons are only put on the dashboard in test mode, see RobotContainer.configureSysIdDashboard()
+    m_robotContainer.configureSysIdDashboard();
   }
 
   @Override
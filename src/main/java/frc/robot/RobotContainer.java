@@ -4,23 +4,46 @@
 
 package frc.robot;
 
-import edu.wpi.first.cameraserver.CameraServer;
-import edu.wpi.first.cscore.UsbCamera;
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.BooleanTopic;
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.button.Trigger;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.auto.AutoRoutines;
+import frc.robot.camera.DriverCamera;
+import frc.robot.camera.VisionPipeline;
 import frc.robot.subsystems.Arm;
 import frc.robot.subsystems.Drivetrain;
 import frc.robot.subsystems.HeadPivot;
 import frc.robot.subsystems.HeadRollers;
 import frc.robot.subsystems.LeadScrew;
 import frc.robot.subsystems.LeadScrew.ShifterState;
+import frc.robot.subsystems.PowerArbiter;
+import frc.robot.subsystems.Preset;
+import frc.robot.util.ButtonBank;
+import frc.robot.util.ControllerState;
+import frc.robot.util.InputRecorder;
+import frc.robot.util.LoopWatchdog;
+import frc.robot.util.MacroTimer;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.StageTimer;
+import frc.robot.util.StartupTimer;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.SysIdRecorder;
+import frc.robot.util.TelemetryLog;
+import frc.robot.util.TelemetryPublisher;
+import frc.robot.util.TelemetryPublisher.Priority;
 
 /*
  * RobotContainer is the file where the subsystems and the commands you create come together to actually
@@ -49,11 +72,44 @@ public class RobotContainer {
   private Joystick driver;
   private Joystick secondary;
 
+  private ControllerState driverState;
+  private ControllerState secondaryState;
+
+  // Times every stage of the robot loop and sheds low priority work when the loop runs long, see LoopWatchdog.java
+  private LoopWatchdog loopWatchdog;
+
+  private ButtonBank driverButtons;
+  private ButtonBank secondaryButtons;
+
   private Compressor compressor;
+  private PowerArbiter powerArbiter;
+
+  private DriverCamera driverCamera;
+  private VisionPipeline vision;
 
-  private UsbCamera camera;
+  private TelemetryLog telemetryLog;
+  private InputRecorder inputRecorder;
+  private TelemetryPublisher debugPublisher;
+
+  private SysIdRecorder sysIdRecorder;
+  private List<Command> sysIdCommands;
+  private boolean sysIdDashboardConfigured;
+
+  // Every autonomous command is built once up front, so autonomousInit doesn't have to build it, see getAutonomousCommand()
+  private AutoRoutines autoRoutines;
+
+  // Times each step of starting up, see StartupTimer.java
+  private StartupTimer startupTimer;
+  private boolean dashboardConfigured;
+
+  // The commands that warmUp() runs, and how many times it has run them so far
+  private Command[] warmUpCommands;
+  private int warmUpPasses;
+  private boolean warmingUp;
 
   public RobotContainer() {
+    startupTimer = new StartupTimer();
+
     /*
      * Inside RobotContainer is where you "put together" your subsystems, commands, and Joysticks to create
      * real world actions for your robot. 
@@ -68,12 +124,24 @@ public class RobotContainer {
     drivetrain = new Drivetrain();
     leadScrew = new LeadScrew();
     arm = new Arm();
-    headPivot = new HeadPivot();
+    headPivot = new HeadPivot(arm::getAngleRadians);
     headRollers = new HeadRollers();
+    startupTimer.step("Subsystems");
 
     driver = new Joystick(Constants.kDriverUSB);
     secondary = new Joystick(Constants.kSecondaryUSB);
 
+    // These hold a once-per-loop copy of everything on each joystick, see captureInputs() below
+    driverState = new ControllerState(driver);
+    secondaryState = new ControllerState(secondary);
+
+    // The watchdog has to hook into the CommandScheduler before the ButtonBanks do
+    loopWatchdog = new LoopWatchdog(TimedRobot.kDefaultPeriod);
+
+    // These run commands when buttons are pressed and released, see configureBindings()
+    driverButtons = new ButtonBank(driverState);
+    secondaryButtons = new ButtonBank(secondaryState);
+
     // A quick note on the Compressor, it's important to make sure you select the right PneumaticsModuleType
     // At the time of building this code, your robot had the CTRE Pneumatics Module. The only other option is the 
     // REV Pneumatics Hub. 
@@ -81,16 +149,259 @@ public class RobotContainer {
     compressor = new Compressor(PneumaticsModuleType.CTREPCM);
     compressor.enableDigital();
 
-    // This starts up the camera on your robot. We store a reference to the camera in a variable named "camera"
+    // The power arbiter turns the compressor off and turns the lower priority mechanisms down when the battery sags,
+    // so the drivetrain and lead screw keep full power, see PowerArbiter.java
+    powerArbiter = new PowerArbiter(compressor, drivetrain, leadScrew, arm, headPivot, headRollers);
+
+    // The lead screw's automatic shifting judges the load from its motor current, which the power arbiter reads
+    leadScrew.setMotorCurrentSupplier(powerArbiter::getLeadScrewCurrent);
+    startupTimer.step("Compressor");
+
+    // This starts up the camera on your robot. We store a reference to it in a variable named "driverCamera"
     // for later when we set up the Shuffleboard (see section "private void configureShuffleboard() {")
-    camera = CameraServer.startAutomaticCapture();
+    // DriverCamera also takes care of keeping the stream inside the field's bandwidth limit, see DriverCamera.java
+    // The camera starts on its own thread, so this returns right away instead of waiting for it
+    driverCamera = new DriverCamera();
+
+    // The same camera is also used to find game pieces, on the vision pipeline's own thread, see VisionPipeline.java
+    vision = new VisionPipeline(driverCamera);
+    startupTimer.step("Camera");
 
     // What these things do is actually defined below, and how the work will have more details below.
     // configureBindings() sets up the associations between your subsystems and commands and your joysticks.
     // configureShuffleboard() sets up what gets displayed the Shuffleboard, for the most part for your robot,
-    // this is just used to setup the viewer for your Camera.
+    // this is just used to setup the viewer for your Camera. Nothing the robot needs to drive depends on the
+    // dashboard, so configureShuffleboard() waits until the first robot loop, see configureDashboard() below.
     configureBindings();
+    loopWatchdog.attachAfterBindings();
+    autoRoutines = new AutoRoutines(drivetrain, Tuning.kAutoPlaybackRate::get, buildAutonomousCommand());
+    startupTimer.step("Bindings");
+
+    // The debug values on the Shuffleboard are sent through debugPublisher, see configureShuffleboard()
+    debugPublisher = new TelemetryPublisher("DebugPublisher", NetworkTableInstance.getDefault().getTable("Debug"));
+
+    // configureLogging() picks out everything that gets recorded into the log file on the roboRIO
+    telemetryLog = new TelemetryLog();
+    configureLogging();
+
+    // The joysticks are also recorded in a compact form every loop, so a match can be replayed in simulation
+    inputRecorder = new InputRecorder(telemetryLog.getDataLog(), driverState, secondaryState);
+
+    // The characterization tests record into the same log file, see configureSysId()
+    configureSysId();
+    startupTimer.step("Logging");
+
+    List<Command> warmUpList = new ArrayList<>(List.of(
+      drivetrain.getDefaultCommand(),
+      leadScrew.getDefaultCommand(),
+      arm.getDefaultCommand(),
+      headPivot.getDefaultCommand(),
+      headRollers.getDefaultCommand()
+    ));
+    warmUpList.addAll(autoRoutines.getCommands());
+    warmUpCommands = warmUpList.toArray(new Command[0]);
+
+    startupTimer.total("RobotContainer");
+  }
+
+  /*
+   * warmUp is called by Robot.disabledPeriodic, every loop while the robot is disabled.
+   *
+   * Java doesn't run your code at full speed right away. The first time a piece of code runs, its classes have to be
+   * loaded, and it runs slowly until the JVM has seen it run enough times to compile it properly (this is called the
+   * "JIT", just in time compiler). Without warming up, that all happens in the first few loops of autonomous, which
+   * are exactly the loops we care about most.
+   *
+   * So while the robot sits disabled before the match, we:
+   *
+   * 1. Run the default commands and every autonomous command over and over (for up to kWarmUpBudgetSeconds each loop,
+   * kWarmUpPasses times in total) with every MotorOutput inhibited, so nothing on the robot actually moves. The
+   * commands are called directly (initialize, execute, end) instead of being scheduled, the scheduler won't run
+   * them while disabled anyway.
+   * 2. Clear out the timing numbers collected along the way, see endWarmUp().
+   */
+  public void warmUp() {
+    if (warmUpPasses >= Constants.kWarmUpPasses) {
+      return;
+    }
+
+    if (!warmingUp) {
+      MotorOutput.setInhibited(true);
+      for (Command command : warmUpCommands) {
+        command.initialize();
+      }
+      warmingUp = true;
+    }
+
+    long start = System.nanoTime();
+    long budgetNanos = (long) (Constants.kWarmUpBudgetSeconds * 1e9);
+
+    while (warmUpPasses < Constants.kWarmUpPasses && System.nanoTime() - start < budgetNanos) {
+      for (Command command : warmUpCommands) {
+        command.execute();
+
+        // Start commands that finish (like autonomous timing out) over again
+        if (command.isFinished()) {
+          command.end(false);
+          command.initialize();
+        }
+      }
+      warmUpPasses++;
+    }
+
+    if (warmUpPasses >= Constants.kWarmUpPasses) {
+      endWarmUp();
+      startupTimer.total("WarmUp");
+    }
+  }
+
+  /*
+   * endWarmUp stops warming up and puts everything back the way it was. Robot.disabledExit calls this, so warming up
+   * always ends before autonomous or teleop start, even if it didn't get to finish.
+   */
+  public void endWarmUp() {
+    if (!warmingUp) {
+      return;
+    }
+
+    for (Command command : warmUpCommands) {
+      command.end(true);
+    }
+
+    MotorOutput.setInhibited(false);
+    StageTimer.resetAll();
+    warmingUp = false;
+  }
+
+  /*
+   * configureDashboard finishes the startup step we put off, setting up the dashboard. Robot.robotPeriodic calls this
+   * every loop, and it only does anything the first time, so the dashboard is set up in the first loop whatever mode
+   * the robot starts in. Usually that's disabled, but a robot that reboots in the middle of a match (after a brownout)
+   * starts straight into autonomous or teleop, and the drivers still need the camera.
+   */
+  public void configureDashboard() {
+    if (dashboardConfigured) {
+      return;
+    }
+
     configureShuffleboard();
+    dashboardConfigured = true;
+    startupTimer.step("Dashboard");
+  }
+
+  /*
+   * configureSysIdDashboard adds the SysId tab, one button per characterization test with a row for each mechanism
+   * (see configureSysId()). Robot.testInit calls this, the tests are only run in test mode. It isn't part of
+   * configureDashboard because every command on a dashboard gets asked whether it's running every loop, and asking
+   * the CommandScheduler that creates objects, so having these on the dashboard in a match would cost garbage in every
+   * loop for buttons nobody presses. Like configureDashboard, it only does anything the first time.
+   */
+  public void configureSysIdDashboard() {
+    if (sysIdDashboardConfigured) {
+      return;
+    }
+
+    ShuffleboardTab sysIdTab = Shuffleboard.getTab("SysId");
+    int tests = SysIdRecorder.Test.values().length;
+    for (int i = 0; i < sysIdCommands.size(); i++) {
+      Command command = sysIdCommands.get(i);
+      sysIdTab.add(command.getName(), command)
+        .withPosition((i % tests) * 2, i / tests)
+        .withSize(2, 1);
+    }
+    sysIdDashboardConfigured = true;
+  }
+
+  /*
+   * loadAutoRoutines reads the autonomous profile files, Robot.disabledInit calls this. See AutoRoutines.java.
+   */
+  public void loadAutoRoutines() {
+    autoRoutines.load();
+  }
+
+  /*
+   * captureInputs takes the once-per-loop snapshot of both joysticks. Robot.robotPeriodic calls this
+   * before the CommandScheduler runs, so every lambda and ButtonBank below reads values from the same
+   * instant, instead of each one asking the driver station for its own copy.
+   */
+  public void captureInputs() {
+    driverState.capture();
+    secondaryState.capture();
+
+    inputRecorder.record();
+  }
+
+  /*
+   * configureSysId builds the characterization tests, every test for every mechanism. They're started from the
+   * "SysId" tab on the Shuffleboard with the robot in test mode, and record into the log file, see SysIdRecorder.java.
+   * The lead screw is tested once in each gear, since the gears need different feedforward gains.
+   */
+  private void configureSysId() {
+    sysIdRecorder = new SysIdRecorder(telemetryLog.getDataLog());
+    List<SysIdMechanism> mechanisms = List.of(
+      drivetrain.sysIdMechanism(),
+      leadScrew.sysIdMechanism(ShifterState.HIGH),
+      leadScrew.sysIdMechanism(ShifterState.LOW),
+      arm.sysIdMechanism()
+    );
+
+    sysIdCommands = new ArrayList<>();
+    for (SysIdMechanism mechanism : mechanisms) {
+      for (SysIdRecorder.Test test : SysIdRecorder.Test.values()) {
+        sysIdCommands.add(sysIdRecorder.command(mechanism, test));
+      }
+    }
+  }
+
+  /*
+   * These getters aren't used by the robot itself, they let the simulation tools (see src/test/java/frc/robot/sim)
+   * look at the subsystems, for example to read where the simulated drivetrain ended up.
+   */
+  public Drivetrain getDrivetrain() {
+    return drivetrain;
+  }
+
+  public LeadScrew getLeadScrew() {
+    return leadScrew;
+  }
+
+  public TelemetryLog getTelemetryLog() {
+    return telemetryLog;
+  }
+
+  public LoopWatchdog getLoopWatchdog() {
+    return loopWatchdog;
+  }
+
+  public SysIdRecorder getSysIdRecorder() {
+    return sysIdRecorder;
+  }
+
+  public List<Command> getSysIdCommands() {
+    return sysIdCommands;
+  }
+
+  /*
+   * logTelemetry records this loop's values into the log file, Robot.robotPeriodic calls it every loop after the
+   * CommandScheduler has run, so the motor outputs it records are the ones from this loop.
+   */
+  public void logTelemetry() {
+    telemetryLog.log();
+  }
+
+  /*
+   * publishTelemetry sends any debug values that changed to the dashboard, Robot.robotPeriodic calls it every loop.
+   */
+  public void publishTelemetry() {
+    debugPublisher.publish();
+  }
+
+  /*
+   * updateCamera lets the driver camera check which stream profile is selected and measure how much bandwidth
+   * it's using. Robot.robotPeriodic calls this every loop.
+   */
+  public void updateCamera() {
+    driverCamera.update();
   }
 
   /*
@@ -119,12 +430,18 @@ public class RobotContainer {
      * For the third and final lambda, we return the twist on your driver joystick (the rotate left and right axis). There
      * was no need to invert this, the behavior of the robot was already correct for this axis, however, we multiply by .5
      * to cut the speed of rotation in half to make controlling the rotation of the robot easier. 
+     * 
+     * That .5, like the other speed limits below, is a TunableNumber (see Tuning.java), so it can be changed from the
+     * dashboard without redeploying. Reading one with get() is as cheap as reading a constant.
+     * 
+     * Notice that the lambdas read from driverState and not the driver Joystick directly. driverState is the
+     * snapshot taken at the start of each loop by captureInputs(), it has the same getY/getX/getTwist methods.
      */
     drivetrain.setDefaultCommand(
       drivetrain.teleopCommand(
-        () -> -driver.getY(), 
-        () -> -driver.getX(), 
-        () -> .5 * driver.getTwist())
+        () -> -driverState.getY(), 
+        () -> -driverState.getX(), 
+        () -> Tuning.kDriveTwistScale.get() * driverState.getTwist())
     );
 
     /*
@@ -148,7 +465,7 @@ public class RobotContainer {
      */
     arm.setDefaultCommand(
       arm.setSpeed(() -> {
-        return -.75 * MathUtil.applyDeadband(secondary.getRawAxis(Constants.kArmUpDownAxis), Constants.kDeadband);
+        return -Tuning.kArmSpeedScale.get() * MathUtil.applyDeadband(secondaryState.getRawAxis(Constants.kArmUpDownAxis), Tuning.kDeadband.get());
       })
     );
 
@@ -159,7 +476,7 @@ public class RobotContainer {
      */
     headPivot.setDefaultCommand(
       headPivot.setSpeed(() -> {
-        return .6 * MathUtil.applyDeadband(secondary.getRawAxis(Constants.kHeadUpDownAxis), Constants.kDeadband);
+        return Tuning.kHeadPivotSpeedScale.get() * MathUtil.applyDeadband(secondaryState.getRawAxis(Constants.kHeadUpDownAxis), Tuning.kDeadband.get());
       })
     );
 
@@ -174,17 +491,17 @@ public class RobotContainer {
     /*
      * This section deals with various buttons and controls that can trigger other commands from your subsystems to run.
      * 
-     * When setting up something you want to happen, you first create a Trigger by saying "new Trigger" and then supplying
-     * that Trigger with a lambda. That lambda must return a true or false value (a boolean value). When first starting out
-     * with triggers, these lambdas you create will almost certainly be based on a button. Sometimes it will just be the raw
-     * state of the button (getRawButton) and other times it may be more specific, like when the button changes from false
-     * (i.e. not pressed) to true (pressed) (getRawButtonPressed). 
+     * When setting up something you want to happen, you pick a button on one of the ButtonBanks (secondaryButtons for the
+     * secondary joystick, driverButtons for the driver joystick) and tell it what command to run. WPILib has a class called
+     * Trigger that does the same job one button at a time, a ButtonBank does it for every button on a joystick at once, and
+     * only does any work for the buttons that changed since the last loop (see ButtonBank.java). That means we can keep adding
+     * buttons and macros without the robot loop getting any slower.
      * 
-     * Once you have a Trigger set up, you need to tell it what to do in a specific circumstance. As a first example, 
-     * looking at the first two Trigger setups below, we have one Trigger that is associated with the joystick button to move
-     * the lead screw up, and another that moves the lead screw down.
+     * You need to tell the bank what to do in a specific circumstance. As a first example, looking at the first two bindings
+     * below, we have one that is associated with the joystick button to move the lead screw up, and another that moves the
+     * lead screw down.
      * 
-     * We only want to see motion while those buttons are held down. To do that, we use the "whileTrue" portion to say
+     * We only want to see motion while those buttons are held down. To do that, we use "whileTrue" to say
      * "while the button is held down, do this". The "this" in this sense being setting the leadScrew subsystem to one speed or 
      * the other, depending on which button is pressed. 
      * 
@@ -195,46 +512,143 @@ public class RobotContainer {
      * one button will always be "pushed" before another, meaning that, whichever button was pushed last will be the one that 
      * gets to run its command. 
      * 
-     * I won't go into a ton of detail on each and every trigger, but there will be some more notes here and there below
+     * I won't go into a ton of detail on each and every binding, but there will be some more notes here and there below
      * to fill in some gaps in the above explanation
      */
-    new Trigger(() -> secondary.getRawButton(Constants.kLeadScrewUpButton)).whileTrue(
-      leadScrew.setSpeed(() -> 1)
-    );
-
-    new Trigger(() -> secondary.getRawButton(Constants.kLeadScrewDownButton)).whileTrue(
-      leadScrew.setSpeed(() -> -1)
-    );
+    secondaryButtons.whileTrue(Constants.kLeadScrewUpButton, leadScrew.setSpeed(() -> 1).withName("LeadScrew Up"));
+    secondaryButtons.whileTrue(Constants.kLeadScrewDownButton, leadScrew.setSpeed(() -> -1).withName("LeadScrew Down"));
 
     /*
      * In this scenario, we're doing some things slightly different. When changing whether we're shifted low or shifted high
      * you only want the command to run the instant you push the button. You don't want to try to repeatedly change the state
      * of the shifter because all that does is occupy the subsystem with useless work. 
      * 
-     * By saying getRawButtonPressed, the value that the lambda returns is only very true for the single instant of time that 
-     * the button changes from false to true. We can catch that "rising edge" change using onTrue, and apply our setShifter
-     * command appropriately based on whatever button our Trigger is watching. 
+     * onTrue runs the command only at the single instant of time that the button changes from not pressed to pressed, the
+     * "rising edge". That's exactly when we want to apply our setShifter command, based on whichever button was pushed. 
      * 
      * ShifterState.HIGH and ShifterState.LOW might seem a little odd, it's looks like a constant, and it technically is, 
      * but you're best to read the explanation in the LeadScrew.java file to understand why it's different. 
      */
-    new Trigger(() -> secondary.getRawButtonPressed(Constants.kShifterHighButton)).onTrue(
-      leadScrew.setShifter(ShifterState.HIGH)
-    );
+    secondaryButtons.onTrue(Constants.kShifterHighButton, leadScrew.setShifter(ShifterState.HIGH));
+    secondaryButtons.onTrue(Constants.kShifterLowButton, leadScrew.setShifter(ShifterState.LOW));
 
-    new Trigger(() -> secondary.getRawButtonPressed(Constants.kShifterLowButton)).onTrue(
-      leadScrew.setShifter(ShifterState.LOW)
-    );
+    // The lead screw can also pick its gear by itself, see LeadScrew.java. The two buttons above turn that off, this turns
+    // it back on (or off again)
+    secondaryButtons.onTrue(Constants.kAutoShiftButton, leadScrew.toggleAutoShift());
 
-    new Trigger(() -> secondary.getRawButton(Constants.kHeadRollersInButton)).whileTrue(
-      headRollers.setSpeed(() -> .7) // When running the rollers in, use 70% of mechanisms max speed
-    );
+    /*
+     * The preset buttons move the arm and the head to a named position together. Each button has two bindings, one for
+     * the arm and one for the head, so the two are separate commands that each let go of their own subsystem when they
+     * end, see bindPreset() below. They hold that position until the operator moves the arm or head joystick, which
+     * takes back manual control of just that mechanism.
+     */
+    bindPreset(Constants.kStowPresetButton, Preset.STOW);
+    bindPreset(Constants.kFloorPickupPresetButton, Preset.FLOOR_PICKUP);
+    bindPreset(Constants.kScorePresetButton, Preset.SCORE);
+
+    /*
+     * The macros do several steps of a pickup at once, see intakeMacro() and stowMacro() below
+     */
+    secondaryButtons.whileTrue(Constants.kIntakeMacroButton, intakeMacro());
+    secondaryButtons.onTrue(Constants.kStowMacroButton, stowMacro());
 
-    new Trigger(() -> secondary.getRawButton(Constants.kHeadRollersOutButton)).whileTrue(
-      headRollers.setSpeed(() -> .4) // When running the rollers out, use 40% of mechanisms max speed
+    // When running the rollers in, use 70% of mechanisms max speed, when running them out, use 40% (tunable, see Tuning.java)
+    secondaryButtons.whileTrue(Constants.kHeadRollersInButton, headRollers.setSpeed(Tuning.kHeadRollersInSpeed::get).withName("HeadRollers In"));
+    secondaryButtons.whileTrue(Constants.kHeadRollersOutButton, headRollers.setSpeed(Tuning.kHeadRollersOutSpeed::get).withName("HeadRollers Out"));
+
+    /*
+     * The driver's buttons. The first switches between robot-oriented and field-oriented driving. The second is held to
+     * let the camera turn the robot toward a game piece while the driver keeps driving, see Drivetrain.java. It uses the
+     * same lambdas as the default command above.
+     */
+    driverButtons.onTrue(Constants.kFieldOrientedButton, drivetrain.toggleFieldOrientedCommand());
+
+    driverButtons.whileTrue(Constants.kAlignToTargetButton,
+      drivetrain.alignToTargetCommand(
+        vision,
+        () -> -driverState.getY(), 
+        () -> -driverState.getX(), 
+        () -> Tuning.kDriveTwistScale.get() * driverState.getTwist())
     );
   }
 
+  /*
+   * bindPreset binds one preset button to two commands: the arm going to the preset, and the head pivot going to it.
+   * They aren't put together in a Commands.parallel, because a group keeps every subsystem its commands need until the
+   * whole group ends. Then moving the arm joystick would end the arm's half, but the arm would stay held by the group
+   * (doing nothing) until the head's half ended too. As two commands, each one is done as soon as the operator moves
+   * that mechanism's joystick (until() ends a command when its condition becomes true), and the default command, the
+   * joystick control, takes that mechanism back over straight away without touching the other.
+   */
+  private void bindPreset(int button, Preset preset) {
+    secondaryButtons.onTrue(button, armTo(preset));
+    secondaryButtons.onTrue(button, headPivotTo(preset));
+  }
+
+  /*
+   * The arm or the head pivot going to a preset and holding it until the operator moves its joystick. until() wraps
+   * the command in a new one, so the name goes back on afterwards, that's the name the scheduler and the LoopWatchdog
+   * see.
+   */
+  private Command armTo(Preset preset) {
+    return arm.goTo(preset).until(() -> getArmJoystick() != 0).withName("Arm " + preset);
+  }
+
+  private Command headPivotTo(Preset preset) {
+    return headPivot.goTo(preset).until(() -> getHeadPivotJoystick() != 0).withName("HeadPivot " + preset);
+  }
+
+  /*
+   * The intake macro lowers the arm and the head to the floor pickup position while the rollers run in, all at the
+   * same time, for as long as the button is held. When the button is let go, all three end and the default commands
+   * take over.
+   *
+   * Each part is turned into a proxy with asProxy(). A group like Commands.parallel keeps every subsystem its commands
+   * need until the whole group ends, so without proxies one part finishing (or the operator taking one mechanism back)
+   * would leave that subsystem stuck in the group, and pressing any button for one of those subsystems would cancel the
+   * whole macro. A proxy schedules its command on its own instead, and the group itself needs no subsystems. Each part
+   * lets go of its subsystem when it ends, and something else taking one subsystem only ends that part. Cancelling the
+   * macro still cancels every part that's running.
+   *
+   * Every part is timed by a MacroTimer (see util/MacroTimer.java), so we can see which mechanism is the slow one.
+   * The arm and head phases are done when they reach the preset, even though they keep holding it after that.
+   */
+  private Command intakeMacro() {
+    MacroTimer timer = new MacroTimer("Intake");
+
+    return timer.macro(Commands.parallel(
+      timer.phase("Arm", armTo(Preset.FLOOR_PICKUP).asProxy(), arm::atGoal),
+      timer.phase("HeadPivot", headPivotTo(Preset.FLOOR_PICKUP).asProxy(), headPivot::atGoal),
+      headRollers.setSpeed(Tuning.kHeadRollersInSpeed::get).asProxy()
+    ));
+  }
+
+  /*
+   * The stow macro pulls everything back in at once: the arm and the head go to their stowed position, and the lead
+   * screw runs down until it hits its bottom limit switch. The arm and head hold there (until their joysticks are
+   * moved, like the presets), and the lead screw part ends at the switch, handing the lead screw straight back to its
+   * default command. The parts are proxies for the same reason as in intakeMacro() above, so the lead screw buttons
+   * only take over the lead screw, and the arm and head keep holding. Starting it while the intake macro is running
+   * takes the arm and the head from it, the rollers keep going until the intake button is let go.
+   */
+  private Command stowMacro() {
+    MacroTimer timer = new MacroTimer("Stow");
+
+    return timer.macro(Commands.parallel(
+      timer.phase("Arm", armTo(Preset.STOW).asProxy(), arm::atGoal),
+      timer.phase("HeadPivot", headPivotTo(Preset.STOW).asProxy(), headPivot::atGoal),
+      timer.phase("LeadScrew", leadScrew.setSpeed(() -> -1).until(leadScrew::isAtBottom).asProxy())
+    ));
+  }
+
+  private double getArmJoystick() {
+    return MathUtil.applyDeadband(secondaryState.getRawAxis(Constants.kArmUpDownAxis), Tuning.kDeadband.get());
+  }
+
+  private double getHeadPivotJoystick() {
+    return MathUtil.applyDeadband(secondaryState.getRawAxis(Constants.kHeadUpDownAxis), Tuning.kDeadband.get());
+  }
+
   /*
    * configureShuffleboard is a method which sets up the various things that we want to see on the Shuffleboard dashboard.
    * For the most part, what you want to see when driving is your camera feed. We have an instance variable which "stores"
@@ -263,13 +677,26 @@ public class RobotContainer {
      * immediately right out of the gate. 
      */
     ShuffleboardTab cameraTab = Shuffleboard.getTab("Camera");
-    cameraTab.add("Camera", camera)
-      .withPosition(0, 0)
-      .withSize(4, 3)
-      .withWidget(BuiltInWidgets.kCameraStream);
+
+    // The camera might still be starting up on its own thread, so the viewer is added once it's ready
+    driverCamera.whenReady(camera -> {
+      cameraTab.add("Camera", camera)
+        .withPosition(0, 0)
+        .withSize(4, 3)
+        .withWidget(BuiltInWidgets.kCameraStream);
+    });
+
+    // The camera tab also gets a chooser for the stream profile, and the "Auto Quality" toggle
+    driverCamera.configureShuffleboard(cameraTab);
 
     Shuffleboard.selectTab("Camera");
 
+    // The autonomous routine is picked from this chooser before the match, see getAutonomousCommand()
+    Shuffleboard.getTab("Autonomous").add("Routine", autoRoutines.getChooser())
+      .withPosition(0, 0)
+      .withSize(3, 1)
+      .withWidget(BuiltInWidgets.kComboBoxChooser);
+
     /*
      * This is the section that I used for debugging. It uses a similar setup to that of the camera, however, 
      * these Shuffleboard widgets, as they're called, show little lights that indicate whether the individual switches
@@ -278,26 +705,78 @@ public class RobotContainer {
      * 
      * These aren't vital to robot operation, so if at some point you wanted to remove these few lines, you could safely do 
      * so. 
+     * 
+     * Instead of handing Shuffleboard a lambda (which it would call and send every loop), we only use Shuffleboard to
+     * place the widgets, and hand debugPublisher a typed publisher for each widget's topic. debugPublisher only sends
+     * a value when it changes, see TelemetryPublisher.java. Any new debug values should be added the same way.
      */
     ShuffleboardTab debugTab = Shuffleboard.getTab("Debug");
-    debugTab.addBoolean("Up Switch State", leadScrew::getUpSwitchValue)
+    GenericEntry upSwitchEntry = debugTab.add("Up Switch State", false)
       .withPosition(0, 0)
       .withSize(2, 1)
-      .withWidget(BuiltInWidgets.kBooleanBox);
+      .withWidget(BuiltInWidgets.kBooleanBox)
+      .getEntry();
 
-    debugTab.addBoolean("Down Switch State", leadScrew::getDownSwitchValue)
+    GenericEntry downSwitchEntry = debugTab.add("Down Switch State", false)
       .withPosition(0, 1)
       .withSize(2, 1)
-      .withWidget(BuiltInWidgets.kBooleanBox);
+      .withWidget(BuiltInWidgets.kBooleanBox)
+      .getEntry();
+
+    debugPublisher.addBoolean(new BooleanTopic(upSwitchEntry.getTopic()).publish(), Priority.LOW,
+      Constants.kDebugTopicPeriodSeconds, leadScrew::getUpSwitchValue);
+    debugPublisher.addBoolean(new BooleanTopic(downSwitchEntry.getTopic()).publish(), Priority.LOW,
+      Constants.kDebugTopicPeriodSeconds, leadScrew::getDownSwitchValue);
+  }
+
+  /*
+   * configureLogging tells the telemetry log what to record. Each line gives the value a name (the slashes group
+   * things together when you open the log) and a lambda that reads the value, the same idea as the lambdas in
+   * configureBindings. See TelemetryLog.java for how the logging itself works.
+   */
+  private void configureLogging() {
+    telemetryLog.addDouble("Drivetrain/FrontLeft", drivetrain::getFrontLeftOutput);
+    telemetryLog.addDouble("Drivetrain/FrontRight", drivetrain::getFrontRightOutput);
+    telemetryLog.addDouble("Drivetrain/RearLeft", drivetrain::getRearLeftOutput);
+    telemetryLog.addDouble("Drivetrain/RearRight", drivetrain::getRearRightOutput);
+    telemetryLog.addDouble("Arm/Output", arm::getOutput);
+    telemetryLog.addDouble("Arm/Angle", arm::getAngleRadians);
+    telemetryLog.addDouble("HeadPivot/Output", headPivot::getOutput);
+    telemetryLog.addDouble("HeadPivot/Angle", headPivot::getAngleRadians);
+    telemetryLog.addDouble("HeadRollers/Output", headRollers::getOutput);
+    telemetryLog.addDouble("LeadScrew/Output", leadScrew::getOutput);
+    telemetryLog.addBoolean("LeadScrew/UpSwitch", leadScrew::getUpSwitchValue);
+    telemetryLog.addBoolean("LeadScrew/DownSwitch", leadScrew::getDownSwitchValue);
+    telemetryLog.addBoolean("LeadScrew/HighGear", leadScrew::isHighGear);
+    telemetryLog.addBoolean("LeadScrew/AutoShift", leadScrew::isAutoShift);
+    telemetryLog.addInteger("LeadScrew/Shifts", leadScrew::getShiftCount);
+    telemetryLog.addDouble("Power/PredictedVoltage", powerArbiter::getPredictedVoltage);
+    telemetryLog.addDouble("Power/TotalCurrent", powerArbiter::getTotalCurrent);
+    telemetryLog.addDouble("Power/LowPriorityScale", powerArbiter::getLowPriorityScale);
+    telemetryLog.addDouble("Power/MediumPriorityScale", powerArbiter::getMediumPriorityScale);
+    telemetryLog.addBoolean("Power/CompressorAllowed", powerArbiter::isCompressorAllowed);
+
+    logController("Driver", driverState);
+    logController("Secondary", secondaryState);
+  }
+
+  private void logController(String name, ControllerState state) {
+    for (int axis = 0; axis < Constants.kLoggedJoystickAxes; axis++) {
+      int loggedAxis = axis;
+      telemetryLog.addDouble(name + "/Axis" + axis, () -> state.getRawAxis(loggedAxis));
+    }
+
+    telemetryLog.addInteger(name + "/Buttons", state::getButtons);
   }
 
   /*
    * All RobotContainers have to have a getAutonomousCommand method, similar to what's shown below. 
-   * There are ways to use the Shuffleboard to select between different commands to allow you to have more than 
-   * one autonomous available to run at the beginning of the match, and be able to select it prior to the match starting.
-   * That however, is a little more complicated, and isn't shown here.
+   * The command it hands out is whichever routine is picked in the "Autonomous" tab on the Shuffleboard. Most of those
+   * routines play back a profile file from src/main/deploy/auto, see auto/AutoRoutines.java and auto/AutoProfile.java.
+   * Those files are read in disabledInit, and how fast they're played back is the "AutoPlaybackRate" in Tuning.java.
    * 
-   * What is shown is a rudimentary auto that drives the robot straight forward at half power for 3.5 seconds. 
+   * What is built below is the fallback, a rudimentary auto that drives the robot straight forward at half power for
+   * 3.5 seconds. It runs if the picked profile couldn't be read. 
    * This makes use of the existing teleopCommand from the Drivetrain subsystem, as well as something that is built in to 
    * all commands called withTimeout, which just says that this command should run, until the timeout is reached, and then
    * the command should be stopped, and the default command for the associated subsystem or subsystems should take over.
@@ -310,8 +789,15 @@ public class RobotContainer {
    * that, want two or more commands to race each other and when one of the commands stops, all of them stop? Decorators can do that to.
    * Because of the complexity of decorators and making commands work together, I won't go much deeper. But as mentioned in other places previously
    * read the WPILIB docs, all of the information you need for in depth understanding of command decorators is in there. 
+   *
+   * The commands are built once, when the RobotContainer is created, and the same ones are handed out every time. That
+   * way autonomousInit doesn't spend its time building commands, and warmUp() can run the exact commands autonomous will use.
    */
   public Command getAutonomousCommand() {
+    return autoRoutines.getSelected();
+  }
+
+  private Command buildAutonomousCommand() {
     return drivetrain.teleopCommand(
       () -> .5, 
       () -> 0, 
@@ -0,0 +1,22 @@
+package frc.robot;
+
+import frc.robot.util.TunableNumber;
+
+/*
+ * The values that can be changed from the dashboard while the robot is running, see
+ * TunableNumber.java for how that works. They show up in NetworkTables under "Tuning".
+ *
+ * The starting values come from Constants. A value that's been tuned and saved overrides the one
+ * in Constants until it's removed from src/main/deploy/tuning.properties.
+ */
+public class Tuning {
+    public static final TunableNumber kDeadband = new TunableNumber("Deadband", Constants.kDeadband);
+
+    public static final TunableNumber kDriveTwistScale = new TunableNumber("DriveTwistScale", Constants.kDriveTwistScale);
+    public static final TunableNumber kArmSpeedScale = new TunableNumber("ArmSpeedScale", Constants.kArmSpeedScale);
+    public static final TunableNumber kHeadPivotSpeedScale = new TunableNumber("HeadPivotSpeedScale", Constants.kHeadPivotSpeedScale);
+    public static final TunableNumber kHeadRollersInSpeed = new TunableNumber("HeadRollersInSpeed", Constants.kHeadRollersInSpeed);
+    public static final TunableNumber kHeadRollersOutSpeed = new TunableNumber("HeadRollersOutSpeed", Constants.kHeadRollersOutSpeed);
+
+    public static final TunableNumber kAutoPlaybackRate = new TunableNumber("AutoPlaybackRate", Constants.kAutoPlaybackRate);
+}
@@ -0,0 +1,159 @@
+package frc.robot.auto;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants;
+
+/*
+ * AutoProfile is one autonomous routine: a table of drivetrain outputs worked out ahead of time,
+ * one row for every sample period, stored in a small binary file in src/main/deploy/auto (which
+ * ends up in /home/lvuser/deploy/auto on the robot).
+ *
+ * The file layout, all numbers big-endian:
+ *
+ *   int    magic, always kMagic ("AUTO")
+ *   short  version, always kVersion
+ *   short  channels per sample, always kChannels (forward, strafe, rotation)
+ *   int    sample period in microseconds
+ *   float  nominal voltage, the battery voltage the outputs were worked out for
+ *   int    number of samples
+ *
+ * followed by the samples, each one a short per channel. A short goes from -32767 to 32767,
+ * which stands for an output from -1 to 1. Three shorts is 6 bytes per sample, so a full 15
+ * second autonomous at 50 samples per second is under 5KB.
+ *
+ * Nothing is read until load() is called. Robot.disabledInit does that (see AutoRoutines), so the
+ * file is read while the robot is sitting disabled, and autonomousInit has nothing to do but start
+ * the command. The file is memory-mapped and copied straight into a short[] in one go.
+ *
+ * Files are made from a spreadsheet of outputs with AutoProfileWriter, see
+ * src/test/java/frc/robot/sim/AutoProfileWriter.java. The .csv each profile was made from is kept
+ * next to it, so it can be read and changed.
+ */
+public class AutoProfile {
+    public static final int kMagic = 0x4155544F;
+    public static final short kVersion = 1;
+    public static final short kChannels = 3;
+    public static final int kHeaderBytes = 20;
+
+    private static final double kSampleScale = 32767;
+
+    private final String name;
+    private final File file;
+
+    private boolean loaded;
+    private short[] samples;
+    private int sampleCount;
+    private double periodSeconds;
+    private double nominalVoltage;
+    private double maxPlaybackRate;
+
+    public AutoProfile(String name, File file) {
+        this.name = name;
+        this.file = file;
+    }
+
+    /*
+     * Reads the file, if it hasn't been read already. Returns false and reports to the driver
+     * station if it can't be read.
+     */
+    public boolean load() {
+        if (loaded) {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.remaining() < kHeaderBytes
+                || buffer.getInt() != kMagic
+                || buffer.getShort() != kVersion
+                || buffer.getShort() != kChannels) {
+                DriverStation.reportError("Not an autonomous profile: " + file, false);
+                return false;
+            }
+
+            periodSeconds = buffer.getInt() / 1e6;
+            nominalVoltage = buffer.getFloat();
+            sampleCount = buffer.getInt();
+
+            if (periodSeconds <= 0 || nominalVoltage <= 0 || sampleCount < 2 || buffer.remaining() < sampleCount * kChannels * 2) {
+                DriverStation.reportError("Autonomous profile is empty, cut short or has no nominal voltage: " + file, false);
+                return false;
+            }
+
+            samples = new short[sampleCount * kChannels];
+            buffer.asShortBuffer().get(samples);
+        } catch (IOException e) {
+            DriverStation.reportError("Could not read autonomous profile " + file + ": " + e.getMessage(), false);
+            return false;
+        }
+
+        /*
+         * Playing the profile back faster (see ProfilePlayer) multiplies every output by the playback
+         * rate, and voltage compensation multiplies it again by nominal / battery, up to
+         * nominal / kAutoMinCompensatedVolts once the battery sags that far. The fastest it can go
+         * while still following the same path is when the busiest wheel just reaches full output
+         * with both of those applied, any faster and the wheels get clipped and the path changes.
+         */
+        double peak = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            peak = Math.max(peak, Math.abs(getForward(i)) + Math.abs(getStrafe(i)) + Math.abs(getRotation(i)));
+        }
+        double compensationHeadroom = Constants.kAutoMinCompensatedVolts / nominalVoltage;
+        maxPlaybackRate = peak > 0 ? compensationHeadroom / peak : 1;
+
+        loaded = true;
+        return true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getPeriodSeconds() {
+        return periodSeconds;
+    }
+
+    public double getDurationSeconds() {
+        return (sampleCount - 1) * periodSeconds;
+    }
+
+    public double getNominalVoltage() {
+        return nominalVoltage;
+    }
+
+    /*
+     * The fastest playback rate that still follows the same path, see load()
+     */
+    public double getMaxPlaybackRate() {
+        return maxPlaybackRate;
+    }
+
+    public double getForward(int sample) {
+        return samples[sample * kChannels] / kSampleScale;
+    }
+
+    public double getStrafe(int sample) {
+        return samples[sample * kChannels + 1] / kSampleScale;
+    }
+
+    public double getRotation(int sample) {
+        return samples[sample * kChannels + 2] / kSampleScale;
+    }
+}
@@ -0,0 +1,113 @@
+package frc.robot.auto;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.subsystems.Drivetrain;
+import frc.robot.util.StartupTimer;
+
+/*
+ * AutoRoutines finds every autonomous profile in the deploy directory's "auto" folder (any file
+ * ending in kProfileExtension), builds a command for each one, and puts them all in a chooser
+ * on the dashboard so the drive team can pick one before the match.
+ *
+ * Everything is built up front, when the RobotContainer is created. The files themselves are read
+ * in load(), which Robot.disabledInit calls, so by the time autonomous starts there's nothing left
+ * to do but start the chosen command.
+ *
+ * The old timed "drive forward" autonomous is still in the chooser as a fallback, and is also what
+ * runs if the chosen profile couldn't be read.
+ */
+public class AutoRoutines {
+    public static final String kProfileExtension = ".auto";
+
+    private final List<AutoProfile> profiles = new ArrayList<>();
+    private final List<Command> commands = new ArrayList<>();
+    private final SendableChooser<Command> chooser = new SendableChooser<>();
+    private final Command fallback;
+
+    public AutoRoutines(Drivetrain drivetrain, DoubleSupplier playbackRate, Command fallback) {
+        this.fallback = fallback;
+
+        File folder = new File(Filesystem.getDeployDirectory(), "auto");
+        File[] files = folder.listFiles((dir, fileName) -> fileName.endsWith(kProfileExtension));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+
+        chooser.setDefaultOption("Timed Drive Forward", fallback);
+        commands.add(fallback);
+
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - kProfileExtension.length());
+            AutoProfile profile = new AutoProfile(name, file);
+            Command command = drivetrain.followProfileCommand(new ProfilePlayer(profile, playbackRate)).withName("Auto " + name);
+
+            profiles.add(profile);
+            commands.add(command);
+
+            if (name.equals(Constants.kDefaultAutoRoutine)) {
+                chooser.setDefaultOption(name, command);
+            } else {
+                chooser.addOption(name, command);
+            }
+        }
+    }
+
+    /*
+     * Reads every profile that hasn't been read yet. Called from Robot.disabledInit, the files only
+     * change when code is deployed, which restarts the robot code, so after the first time this
+     * has nothing to do.
+     */
+    public void load() {
+        long start = System.nanoTime();
+        boolean loadedAny = false;
+
+        for (AutoProfile profile : profiles) {
+            if (!profile.isLoaded()) {
+                profile.load();
+                loadedAny = true;
+            }
+        }
+
+        if (loadedAny) {
+            StartupTimer.publish("AutoProfiles", System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * The command picked on the dashboard, or the fallback if that one's profile couldn't be read
+     */
+    public Command getSelected() {
+        Command selected = chooser.getSelected();
+        if (selected == null) {
+            return fallback;
+        }
+
+        int index = commands.indexOf(selected) - 1;
+        if (index >= 0 && !profiles.get(index).isLoaded()) {
+            return fallback;
+        }
+
+        return selected;
+    }
+
+    public SendableChooser<Command> getChooser() {
+        return chooser;
+    }
+
+    /*
+     * Every autonomous command, the fallback first, used by RobotContainer.warmUp
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+}
@@ -0,0 +1,107 @@
+package frc.robot.auto;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants;
+
+/*
+ * ProfilePlayer steps through an AutoProfile while autonomous runs. Drivetrain's
+ * followProfileCommand calls start() once, then update() every loop and drives with the
+ * getters.
+ *
+ * Two things happen to the outputs on the way out:
+ *
+ *   - Voltage compensation. The profile was worked out for a battery at its nominal voltage. A
+ *     motor's speed depends on the voltage it gets, not the output, so with a tired battery at
+ *     11V, every output is multiplied by nominal / 11 to get the same speed, and the robot ends
+ *     up in the same place no matter how charged the battery is. Below kAutoMinCompensatedVolts
+ *     the outputs stop growing, the playback rate limit leaves exactly that much headroom.
+ *
+ *   - Playback rate. With a rate of 2, the profile is stepped through twice as fast, and every
+ *     output is doubled. Twice the speed for half the time covers the same path in half the time.
+ *     The rate is read once at start() and limited to the profile's getMaxPlaybackRate().
+ *
+ * Between samples the outputs are blended in a straight line, so a profile recorded at 20ms
+ * still plays back smoothly at any rate. update() creates no objects.
+ */
+public class ProfilePlayer {
+    private final AutoProfile profile;
+    private final DoubleSupplier playbackRate;
+
+    private double startTime;
+    private double rate;
+    private boolean done = true;
+
+    private double forward;
+    private double strafe;
+    private double rotation;
+
+    public ProfilePlayer(AutoProfile profile, DoubleSupplier playbackRate) {
+        this.profile = profile;
+        this.playbackRate = playbackRate;
+    }
+
+    public void start() {
+        startTime = Timer.getFPGATimestamp();
+        forward = 0;
+        strafe = 0;
+        rotation = 0;
+
+        // A profile that didn't load just finishes right away, and the robot sits still
+        done = !profile.isLoaded();
+        if (!done) {
+            rate = Math.max(Math.min(playbackRate.getAsDouble(), profile.getMaxPlaybackRate()), .1);
+        }
+    }
+
+    public void update() {
+        if (done) {
+            return;
+        }
+
+        double position = (Timer.getFPGATimestamp() - startTime) * rate / profile.getPeriodSeconds();
+        int sample = (int) position;
+
+        if (sample >= profile.getSampleCount() - 1) {
+            done = true;
+            forward = 0;
+            strafe = 0;
+            rotation = 0;
+            return;
+        }
+
+        double fraction = position - sample;
+        double battery = Math.max(RobotController.getBatteryVoltage(), Constants.kAutoMinCompensatedVolts);
+        double scale = rate * profile.getNominalVoltage() / battery;
+
+        forward = scale * lerp(profile.getForward(sample), profile.getForward(sample + 1), fraction);
+        strafe = scale * lerp(profile.getStrafe(sample), profile.getStrafe(sample + 1), fraction);
+        rotation = scale * lerp(profile.getRotation(sample), profile.getRotation(sample + 1), fraction);
+    }
+
+    private static double lerp(double a, double b, double fraction) {
+        return a + (b - a) * fraction;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public AutoProfile getProfile() {
+        return profile;
+    }
+
+    public double getForward() {
+        return forward;
+    }
+
+    public double getStrafe() {
+        return strafe;
+    }
+
+    public double getRotation() {
+        return rotation;
+    }
+}
@@ -0,0 +1,219 @@
+package frc.robot.camera;
+
+import java.util.function.Consumer;
+
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.cscore.CameraServerJNI;
+import edu.wpi.first.cscore.MjpegServer;
+import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.shuffleboard.BuiltInWidgets;
+import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import frc.robot.Constants;
+import frc.robot.util.StartupTimer;
+
+/*
+ * DriverCamera owns the USB camera the drivers watch, and the stream that sends it to the
+ * dashboard.
+ *
+ * On the field, everything the robot sends to the driver station has to fit under a bandwidth
+ * limit, and the camera is by far the biggest user of it. So instead of streaming at whatever
+ * the camera defaults to, the stream uses one of the StreamProfiles, picked from a chooser on
+ * the "Camera" Shuffleboard tab.
+ *
+ * Once a second update() measures what the camera is actually sending (bitrate and frames per
+ * second) and how old the newest frame is, and publishes those under "Camera" in NetworkTables.
+ * If "Auto Quality" is turned on and the bitrate stays over kCameraBandwidthBudgetMbps, the
+ * stream steps itself down to the next smaller profile. Once the bitrate has stayed well under the
+ * budget for a while (see kCameraStepUpFraction), it steps back up one profile at a time, but
+ * never past the profile picked in the chooser. Turning "Auto Quality" off goes straight back to
+ * the picked profile.
+ *
+ * The bitrate is measured at the camera, before the stream re-compresses each frame to the
+ * profile's JPEG quality, so what actually goes over the network is a bit less than what's
+ * measured. That errs on the side of stepping down too early rather than too late.
+ *
+ * Starting the camera server can take a good fraction of a second, and nothing else in
+ * robotInit depends on it, so the constructor starts the camera on its own thread and returns
+ * right away. Until the camera is ready, update() does nothing. Anything that needs the camera
+ * itself (like the dashboard viewer) goes through whenReady(), which runs it on the robot loop's
+ * thread once the camera is up.
+ *
+ * This isn't a subsystem, there's no mechanism to move and no commands to run, it just needs
+ * update() to be called every loop.
+ */
+public class DriverCamera {
+    // Set by the startup thread, camera is set last and doubles as the "ready" flag
+    private volatile UsbCamera camera;
+    private volatile MjpegServer server;
+
+    private Consumer<UsbCamera> readyAction;
+
+    private SendableChooser<StreamProfile> profileChooser;
+    // What the chooser showed last time we looked, and what the stream is actually using
+    private StreamProfile selectedProfile;
+    private StreamProfile activeProfile;
+
+    private GenericEntry autoQualityEntry;
+
+    private int loopsUntilMeasure;
+    private int overBudgetMeasurements;
+    private int underBudgetMeasurements;
+
+    private DoublePublisher bitratePublisher;
+    private DoublePublisher fpsPublisher;
+    private DoublePublisher frameAgePublisher;
+    private StringPublisher activeProfilePublisher;
+
+    public DriverCamera() {
+        profileChooser = new SendableChooser<>();
+        for (StreamProfile profile : StreamProfile.values()) {
+            profileChooser.addOption(profile.name(), profile);
+        }
+        profileChooser.setDefaultOption(Constants.kDefaultStreamProfile.name(), Constants.kDefaultStreamProfile);
+
+        selectedProfile = Constants.kDefaultStreamProfile;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Camera");
+        bitratePublisher = table.getDoubleTopic("bitrateMbps").publish();
+        fpsPublisher = table.getDoubleTopic("fps").publish();
+        frameAgePublisher = table.getDoubleTopic("frameAgeMs").publish();
+        activeProfilePublisher = table.getStringTopic("activeProfile").publish();
+
+        Thread startup = new Thread(this::start, "DriverCameraStartup");
+        startup.setDaemon(true);
+        startup.start();
+    }
+
+    private void start() {
+        long startNanos = System.nanoTime();
+
+        UsbCamera startedCamera = CameraServer.startAutomaticCapture();
+        server = (MjpegServer) CameraServer.getServer();
+
+        // The bitrate and FPS numbers are only measured if telemetry is turned on
+        CameraServerJNI.setTelemetryPeriod(1.0);
+
+        applyProfile(startedCamera, selectedProfile);
+        camera = startedCamera;
+
+        StartupTimer.publish("DriverCamera", System.nanoTime() - startNanos);
+    }
+
+    /*
+     * The camera, or null if it hasn't finished starting yet
+     */
+    public UsbCamera getCamera() {
+        return camera;
+    }
+
+    /*
+     * action runs once, on the robot loop's thread, in the first update() after the camera is ready
+     */
+    public void whenReady(Consumer<UsbCamera> action) {
+        readyAction = action;
+    }
+
+    /*
+     * Puts the profile chooser and the "Auto Quality" toggle on the given tab, RobotContainer
+     * calls this when it sets up the "Camera" tab
+     */
+    public void configureShuffleboard(ShuffleboardTab cameraTab) {
+        cameraTab.add("Stream Profile", profileChooser)
+            .withPosition(4, 0)
+            .withSize(2, 1)
+            .withWidget(BuiltInWidgets.kComboBoxChooser);
+
+        autoQualityEntry = cameraTab.add("Auto Quality", true)
+            .withPosition(4, 1)
+            .withSize(2, 1)
+            .withWidget(BuiltInWidgets.kToggleButton)
+            .getEntry();
+    }
+
+    public void update() {
+        UsbCamera camera = this.camera;
+        if (camera == null) {
+            return;
+        }
+
+        if (readyAction != null) {
+            readyAction.accept(camera);
+            readyAction = null;
+        }
+
+        /*
+         * A driver picking a profile always wins, even over a step down, and it starts the
+         * auto quality check fresh. The chooser only tells us when it changes, so turning
+         * auto quality off is how to get back to the profile it already shows.
+         */
+        boolean autoQuality = autoQualityEntry == null || autoQualityEntry.getBoolean(true);
+
+        StreamProfile selected = profileChooser.getSelected();
+        if (selected != null && selected != selectedProfile) {
+            selectedProfile = selected;
+            overBudgetMeasurements = 0;
+            underBudgetMeasurements = 0;
+            applyProfile(camera, selected);
+        } else if (!autoQuality && activeProfile != selectedProfile) {
+            applyProfile(camera, selectedProfile);
+        }
+
+        if (--loopsUntilMeasure > 0) {
+            return;
+        }
+        loopsUntilMeasure = Constants.kCameraMeasurePeriod;
+
+        double bitrateMbps = camera.getActualDataRate() * 8 / 1e6;
+        double frameAgeMs = (WPIUtilJNI.now() - camera.getLastFrameTime()) / 1000.0;
+
+        bitratePublisher.set(bitrateMbps);
+        fpsPublisher.set(camera.getActualFPS());
+        frameAgePublisher.set(frameAgeMs);
+
+        if (!autoQuality) {
+            overBudgetMeasurements = 0;
+            underBudgetMeasurements = 0;
+        } else if (bitrateMbps > Constants.kCameraBandwidthBudgetMbps) {
+            overBudgetMeasurements++;
+            underBudgetMeasurements = 0;
+
+            if (overBudgetMeasurements >= Constants.kCameraOverBudgetMeasurements) {
+                overBudgetMeasurements = 0;
+                applyProfile(camera, activeProfile.stepDown());
+            }
+        } else if (activeProfile.ordinal() > selectedProfile.ordinal()
+            && bitrateMbps < Constants.kCameraBandwidthBudgetMbps * Constants.kCameraStepUpFraction) {
+            overBudgetMeasurements = 0;
+            underBudgetMeasurements++;
+
+            if (underBudgetMeasurements >= Constants.kCameraUnderBudgetMeasurements) {
+                underBudgetMeasurements = 0;
+                applyProfile(camera, activeProfile.stepUp());
+            }
+        } else {
+            overBudgetMeasurements = 0;
+            underBudgetMeasurements = 0;
+        }
+    }
+
+    private void applyProfile(UsbCamera camera, StreamProfile profile) {
+        if (profile == activeProfile) {
+            return;
+        }
+
+        camera.setResolution(profile.width, profile.height);
+        camera.setFPS(profile.fps);
+        server.setCompression(profile.quality);
+        server.setDefaultCompression(profile.quality);
+
+        activeProfile = profile;
+        activeProfilePublisher.set(profile.name());
+    }
+}
@@ -0,0 +1,46 @@
+package frc.robot.camera;
+
+/*
+ * A StreamProfile is one set of settings for the driver camera stream: how big the picture is,
+ * how many pictures (frames) per second, and how hard each frame is JPEG compressed.
+ *
+ * The quality number is the JPEG quality, 0 to 100. Lower quality means smaller frames, which
+ * means less of the field's bandwidth limit gets used, at the cost of a blurrier picture.
+ *
+ * The profiles are listed from best looking to smallest. The automatic step down in DriverCamera
+ * relies on that order, it moves one profile further down the list each time it steps down.
+ */
+public enum StreamProfile {
+    HIGH(320, 240, 30, 50),
+    MEDIUM(320, 240, 20, 35),
+    LOW(160, 120, 15, 30),
+    MINIMAL(160, 120, 10, 20);
+
+    public final int width;
+    public final int height;
+    public final int fps;
+    public final int quality;
+
+    StreamProfile(int width, int height, int fps, int quality) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.quality = quality;
+    }
+
+    /*
+     * The next smaller profile, or this one if it's already the smallest
+     */
+    public StreamProfile stepDown() {
+        StreamProfile[] profiles = values();
+
+        return profiles[Math.min(ordinal() + 1, profiles.length - 1)];
+    }
+
+    /*
+     * The next better looking profile, or this one if it's already the best
+     */
+    public StreamProfile stepUp() {
+        return values()[Math.max(ordinal() - 1, 0)];
+    }
+}
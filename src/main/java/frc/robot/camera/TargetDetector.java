@@ -0,0 +1,85 @@
+package frc.robot.camera;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+import frc.robot.Constants;
+
+/*
+ * TargetDetector finds a game piece in one camera frame, by its color.
+ *
+ * The steps are:
+ *   1. Convert the frame from BGR (how the camera gives it to us) to HSV. In HSV the color
+ *      itself (hue) is one number, so "orange" is a simple range no matter how bright it is.
+ *   2. Make a black and white mask, white wherever the pixel is inside the HSV range in Constants.
+ *   3. Use the mask's "moments" to find how many pixels are white (the area) and where their
+ *      center is.
+ *
+ * The in-between images (hsv and mask) are kept and reused for every frame, so processing a
+ * frame doesn't create new image buffers.
+ *
+ * This class has no thread and no camera of its own, VisionPipeline feeds it frames from the
+ * camera, and src/test/java/frc/robot/sim/VisionReplay.java feeds it saved images.
+ */
+public class TargetDetector {
+    private final Mat hsv = new Mat();
+    private final Mat mask = new Mat();
+
+    private final Scalar lower = new Scalar(
+        Constants.kVisionHueMin, Constants.kVisionSaturationMin, Constants.kVisionValueMin);
+    private final Scalar upper = new Scalar(
+        Constants.kVisionHueMax, Constants.kVisionSaturationMax, Constants.kVisionValueMax);
+
+    private boolean hasTarget;
+    private double targetX;
+    private double targetY;
+    private double targetArea;
+
+    /*
+     * Looks for the target in a BGR frame, returns whether one was found. The details are
+     * available from the getters until the next call.
+     */
+    public boolean process(Mat bgr) {
+        Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, lower, upper, mask);
+
+        Moments moments = Imgproc.moments(mask, true);
+
+        double pixels = (double) mask.rows() * mask.cols();
+        targetArea = pixels > 0 ? moments.m00 / pixels : 0;
+        hasTarget = targetArea >= Constants.kVisionMinAreaFraction;
+
+        if (hasTarget) {
+            // -1 is the left (or top) edge of the frame, 1 is the right (or bottom) edge
+            targetX = 2 * (moments.m10 / moments.m00) / mask.cols() - 1;
+            targetY = 2 * (moments.m01 / moments.m00) / mask.rows() - 1;
+        } else {
+            targetX = 0;
+            targetY = 0;
+        }
+
+        return hasTarget;
+    }
+
+    public boolean hasTarget() {
+        return hasTarget;
+    }
+
+    public double getTargetX() {
+        return targetX;
+    }
+
+    public double getTargetY() {
+        return targetY;
+    }
+
+    /*
+     * The fraction of the frame covered by the target, from 0 to 1
+     */
+    public double getTargetArea() {
+        return targetArea;
+    }
+}
@@ -0,0 +1,169 @@
+package frc.robot.camera;
+
+import org.opencv.core.Mat;
+
+import edu.wpi.first.cameraserver.CameraServer;
+import edu.wpi.first.cscore.CvSink;
+import edu.wpi.first.cscore.UsbCamera;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.WPIUtilJNI;
+import frc.robot.Constants;
+import frc.robot.util.StageTimer;
+
+/*
+ * VisionPipeline looks for game pieces in the driver camera's frames, on its own thread, so
+ * the robot loop never waits for image processing.
+ *
+ * The thread grabs frames from the camera through a CvSink into one reused Mat, and runs a
+ * TargetDetector on each. A CvSink only ever hands out the newest frame, so if processing falls
+ * behind, the frames in between are skipped rather than piling up. On top of that, a frame that
+ * is already older than kVisionMaxFrameAgeSeconds by the time we get it is thrown away without
+ * processing, there's no point steering toward where the game piece used to be.
+ *
+ * Handing results to the robot loop: the vision thread is the only writer, and the robot loop
+ * reads with read(), which copies the newest result into a VisionResult it owns. Neither side
+ * ever waits on a lock. Instead there's a "sequence" counter (this trick is called a seqlock):
+ *
+ *   - the writer adds one to sequence (making it odd), writes the fields, then adds one again
+ *     (making it even)
+ *   - the reader reads sequence, copies the fields, then reads sequence again. If it was odd,
+ *     or changed in between, a write happened while it was copying, so it copies again.
+ *
+ * Every field is volatile, so Java guarantees the reads and writes happen in that order.
+ * Writing a result takes nanoseconds, so the reader almost never has to try twice.
+ *
+ * Timing is published under "Timing/VisionPipeline" (how long processing a frame takes, see
+ * StageTimer), and "Vision" gets the latency from capture to result, the number of dropped
+ * frames, and the newest result.
+ */
+public class VisionPipeline {
+    private final DriverCamera driverCamera;
+    private final TargetDetector detector = new TargetDetector();
+    private final Mat frame = new Mat();
+
+    // Shared with the robot loop, see the seqlock explanation above
+    private volatile long sequence;
+    private volatile boolean hasTarget;
+    private volatile double targetX;
+    private volatile double targetY;
+    private volatile double targetArea;
+    private volatile long captureTimeMicros;
+    private volatile long frameNumber;
+
+    // Only used by the vision thread
+    private final StageTimer processTimer;
+    private long droppedFrames;
+    private int framesUntilPublish;
+
+    private final DoublePublisher latencyPublisher;
+    private final IntegerPublisher droppedPublisher;
+    private final DoublePublisher targetXPublisher;
+    private final DoublePublisher targetAreaPublisher;
+
+    public VisionPipeline(DriverCamera driverCamera) {
+        this.driverCamera = driverCamera;
+
+        processTimer = new StageTimer("VisionPipeline", Constants.kVisionBudgetSeconds);
+        framesUntilPublish = Constants.kVisionPublishPeriod;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Vision");
+        latencyPublisher = table.getDoubleTopic("latencyMs").publish();
+        droppedPublisher = table.getIntegerTopic("droppedFrames").publish();
+        targetXPublisher = table.getDoubleTopic("targetX").publish();
+        targetAreaPublisher = table.getDoubleTopic("targetArea").publish();
+
+        Thread thread = new Thread(this::run, "VisionPipeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Copies the newest result into result, without ever waiting on the vision thread.
+     * Returns false if no frame has been processed yet.
+     */
+    public boolean read(VisionResult result) {
+        long before;
+        long after;
+
+        do {
+            before = sequence;
+
+            result.hasTarget = hasTarget;
+            result.targetX = targetX;
+            result.targetY = targetY;
+            result.targetArea = targetArea;
+            result.captureTimeMicros = captureTimeMicros;
+            result.frameNumber = frameNumber;
+
+            after = sequence;
+        } while ((before & 1) != 0 || before != after);
+
+        return result.frameNumber > 0;
+    }
+
+    private void run() {
+        CvSink sink = waitForCamera();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long captureTime = sink.grabFrame(frame, Constants.kVisionFrameTimeoutSeconds);
+            if (captureTime == 0) {
+                // Timed out or the camera isn't connected, just try again
+                continue;
+            }
+
+            if (WPIUtilJNI.now() - captureTime > Constants.kVisionMaxFrameAgeSeconds * 1e6) {
+                droppedFrames++;
+                continue;
+            }
+
+            processTimer.start();
+            detector.process(frame);
+            processTimer.stop();
+
+            write(captureTime);
+
+            if (--framesUntilPublish <= 0) {
+                framesUntilPublish = Constants.kVisionPublishPeriod;
+
+                latencyPublisher.set((WPIUtilJNI.now() - captureTime) / 1000.0);
+                droppedPublisher.set(droppedFrames);
+                targetXPublisher.set(detector.getTargetX());
+                targetAreaPublisher.set(detector.getTargetArea());
+            }
+        }
+    }
+
+    private void write(long captureTime) {
+        long next = sequence + 1;
+        sequence = next;
+
+        hasTarget = detector.hasTarget();
+        targetX = detector.getTargetX();
+        targetY = detector.getTargetY();
+        targetArea = detector.getTargetArea();
+        captureTimeMicros = captureTime;
+        frameNumber = frameNumber + 1;
+
+        sequence = next + 1;
+    }
+
+    /*
+     * The driver camera starts on its own thread (see DriverCamera), so wait for it here
+     */
+    private CvSink waitForCamera() {
+        UsbCamera camera;
+        while ((camera = driverCamera.getCamera()) == null) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        return CameraServer.getVideo(camera);
+    }
+}
@@ -0,0 +1,23 @@
+package frc.robot.camera;
+
+/*
+ * VisionResult holds one result from the VisionPipeline. Whoever reads results creates one of
+ * these once and passes it to VisionPipeline.read() every loop, which fills it in, so reading a
+ * result never creates a new object.
+ */
+public class VisionResult {
+    public boolean hasTarget;
+
+    // Where the target is in the frame, -1 is the left (or top) edge, 1 is the right (or bottom) edge
+    public double targetX;
+    public double targetY;
+
+    // The fraction of the frame covered by the target, from 0 to 1
+    public double targetArea;
+
+    // When the camera captured the frame, in microseconds on the same clock as WPIUtilJNI.now()
+    public long captureTimeMicros;
+
+    // Counts up by one for every processed frame, so a reader can tell a new result from an old one
+    public long frameNumber;
+}
@@ -0,0 +1,33 @@
+package frc.robot.sim;
+
+import frc.robot.Constants;
+
+/*
+ * A simple model of the robot battery, used when the code runs in simulation so the
+ * PowerArbiter has a sagging voltage to react to.
+ *
+ * A battery acts like a perfect voltage source (kSimBatteryOpenCircuitVolts) with a small
+ * resistor inside it (kSimBatteryResistanceOhms). The more current the robot pulls, the more
+ * voltage is lost across that resistor, so the voltage the roboRIO sees is:
+ *
+ *   voltage = open circuit voltage - current * resistance
+ *
+ * Real batteries don't change voltage instantly, so the voltage moves toward that value with
+ * a short time constant. A fresh battery with 0.02 ohms sags to about 7V at 275A, which is
+ * about what happens when the drivetrain pushes against something and the lead screw climbs at
+ * the same time.
+ */
+public class BatterySagModel {
+    private double voltage = Constants.kSimBatteryOpenCircuitVolts;
+
+    public void update(double currentAmps, double dtSeconds) {
+        double target = Constants.kSimBatteryOpenCircuitVolts - currentAmps * Constants.kSimBatteryResistanceOhms;
+        double alpha = 1 - Math.exp(-dtSeconds / Constants.kSimBatteryTimeConstantSeconds);
+
+        voltage += (Math.max(target, 0) - voltage) * alpha;
+    }
+
+    public double getVoltage() {
+        return voltage;
+    }
+}
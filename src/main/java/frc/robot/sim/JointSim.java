@@ -0,0 +1,77 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.AnalogInputSim;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+
+/*
+ * A physics model of a motor swinging a weight around a pivot, used for the arm and the head
+ * pivot when the code runs in simulation. WPILib's SingleJointedArmSim does the physics (the
+ * motor, the gearing, the weight and gravity), and this class turns the angle it comes up with
+ * into the voltage the potentiometer would read, so ProfiledJoint reads the simulated angle
+ * exactly like it would read the real one.
+ *
+ * The head is modeled as if the arm were level, so its gravity is only right when it is. The
+ * feedback in ProfiledJoint makes up the difference.
+ */
+public class JointSim {
+    private final SingleJointedArmSim jointSim;
+    private final AnalogInputSim potentiometerSim;
+    private final double rangeDegrees;
+    private final double offsetDegrees;
+
+    public JointSim(
+        DCMotor motor,
+        double gearing,
+        double lengthMeters,
+        double massKg,
+        double minDegrees,
+        double maxDegrees,
+        double startDegrees,
+        int analogChannel,
+        double rangeDegrees,
+        double offsetDegrees
+    ) {
+        jointSim = new SingleJointedArmSim(
+            motor,
+            gearing,
+            SingleJointedArmSim.estimateMOI(lengthMeters, massKg),
+            lengthMeters,
+            Math.toRadians(minDegrees),
+            Math.toRadians(maxDegrees),
+            true,
+            Math.toRadians(startDegrees));
+
+        potentiometerSim = new AnalogInputSim(analogChannel);
+        this.rangeDegrees = rangeDegrees;
+        this.offsetDegrees = offsetDegrees;
+
+        updatePotentiometer();
+    }
+
+    public void update(double output, double dtSeconds) {
+        jointSim.setInputVoltage(output * RobotController.getBatteryVoltage());
+        jointSim.update(dtSeconds);
+
+        updatePotentiometer();
+    }
+
+    // AnalogPotentiometer reads angle = voltage / 5V * range + offset, so work that backwards
+    private void updatePotentiometer() {
+        double degrees = Math.toDegrees(jointSim.getAngleRads());
+        potentiometerSim.setVoltage((degrees - offsetDegrees) / rangeDegrees * RobotController.getVoltage5V());
+    }
+
+    public double getAngleRadians() {
+        return jointSim.getAngleRads();
+    }
+
+    public double getVelocityRadiansPerSecond() {
+        return jointSim.getVelocityRadPerSec();
+    }
+
+    public double getCurrentDrawAmps() {
+        return jointSim.getCurrentDrawAmps();
+    }
+}
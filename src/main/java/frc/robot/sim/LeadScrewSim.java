@@ -0,0 +1,105 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.Constants;
+
+/*
+ * A simple physics model of the lead screw, used when the code runs in simulation.
+ *
+ * The position is how far the lead screw has travelled from the bottom, in meters, between 0
+ * and kLeadScrewTravelMeters. The carriage speeds up toward the speed the motor output asks
+ * for, and how fast "full speed" is depends on which gear the shifter is in. When it reaches
+ * either end it stops there, and isAtTop()/isAtBottom() say whether the limit switches would
+ * be pressed.
+ *
+ * Past the first kSimLeadScrewSlackMeters, going up means lifting, which takes kSimLeadScrewLiftLoad
+ * of the motors' stall torque in high gear (a third of that in low gear, the gears are 3 to 1). A
+ * DC motor slows down in a straight line as the load goes up, so lifting in high gear is much
+ * slower than the free speed, and the motors draw current in proportion to the load. That's what
+ * lets the lead screw's automatic shifting be tried out in simulation. Going down, and holding
+ * still, take no effort, a lead screw doesn't back drive.
+ */
+public class LeadScrewSim {
+    private static final DCMotor kMotors = DCMotor.getCIM(2);
+
+    private double output;
+    private boolean highGear;
+
+    private double position;
+    private double velocity;
+
+    public void setInputs(double output, boolean highGear) {
+        this.output = output;
+        this.highGear = highGear;
+    }
+
+    public void update(double dtSeconds) {
+        double alpha = 1 - Math.exp(-dtSeconds / Constants.kLeadScrewTimeConstantSeconds);
+        double target = (output * RobotController.getBatteryVoltage() / 12 - getLoad()) * getFreeSpeed();
+        if (output > 0) {
+            target = Math.max(target, 0);
+        }
+
+        velocity += (target - velocity) * alpha;
+        position += velocity * dtSeconds;
+
+        if (position <= 0 || position >= Constants.kLeadScrewTravelMeters) {
+            position = MathUtil.clamp(position, 0, Constants.kLeadScrewTravelMeters);
+            velocity = 0;
+        }
+    }
+
+    /*
+     * The fraction of the motors' stall torque it takes to hold the carriage against its load
+     */
+    public double getLoad() {
+        if (output <= 0 || position < Constants.kSimLeadScrewSlackMeters) {
+            return 0;
+        }
+
+        return highGear
+            ? Constants.kSimLeadScrewLiftLoad
+            : Constants.kSimLeadScrewLiftLoad * Constants.kLeadScrewLowGearSpeedMetersPerSecond / Constants.kLeadScrewHighGearSpeedMetersPerSecond;
+    }
+
+    /*
+     * The top speed of the carriage in the current gear, in meters per second
+     */
+    public double getFreeSpeed() {
+        return highGear
+            ? Constants.kLeadScrewHighGearSpeedMetersPerSecond
+            : Constants.kLeadScrewLowGearSpeedMetersPerSecond;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public void setPosition(double position) {
+        this.position = MathUtil.clamp(position, 0, Constants.kLeadScrewTravelMeters);
+        velocity = 0;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public boolean isAtTop() {
+        return position >= Constants.kLeadScrewTravelMeters;
+    }
+
+    public boolean isAtBottom() {
+        return position <= 0;
+    }
+
+    /*
+     * Roughly how much current the lead screw motors are pulling, in amps
+     */
+    public double getCurrentDrawAmps() {
+        double motorSpeed = velocity / getFreeSpeed() * kMotors.freeSpeedRadPerSec;
+
+        return Math.abs(kMotors.getCurrent(motorSpeed, output * RobotController.getBatteryVoltage()));
+    }
+}
@@ -0,0 +1,105 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.MecanumDriveKinematics;
+import edu.wpi.first.math.kinematics.MecanumDriveWheelSpeeds;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.Constants;
+
+/*
+ * A simple physics model of the mecanum drivetrain, used when the code runs in simulation.
+ *
+ * Each wheel speeds up toward the speed its motor output asks for, like a real motor would
+ * (a "first order lag" with time constant kDriveWheelTimeConstantSeconds). The four wheel
+ * speeds are then turned into how the whole robot moves using mecanum kinematics, and that
+ * motion is added up over time into a position on the field (the "pose").
+ *
+ * It doesn't model wheel slip or collisions, it's only meant to be close enough to exercise
+ * the code and see roughly where the robot would go.
+ */
+public class MecanumDrivetrainSim {
+    private static final DCMotor kWheelMotor = DCMotor.getCIM(1);
+
+    private final MecanumDriveKinematics kinematics;
+
+    // Front left, front right, rear left, rear right
+    private final double[] outputs = new double[4];
+    private final double[] wheelSpeeds = new double[4];
+
+    private Pose2d pose = new Pose2d();
+
+    public MecanumDrivetrainSim() {
+        double x = Constants.kDriveWheelBaseMeters / 2;
+        double y = Constants.kDriveTrackWidthMeters / 2;
+
+        kinematics = new MecanumDriveKinematics(
+            new Translation2d(x, y),
+            new Translation2d(x, -y),
+            new Translation2d(-x, y),
+            new Translation2d(-x, -y)
+        );
+    }
+
+    /*
+     * The motor outputs (-1 to 1) with forward always positive, meaning the right side
+     * inversion has already been undone, which is what Talon.get() gives back
+     */
+    public void setInputs(double frontLeft, double frontRight, double rearLeft, double rearRight) {
+        outputs[0] = frontLeft;
+        outputs[1] = frontRight;
+        outputs[2] = rearLeft;
+        outputs[3] = rearRight;
+    }
+
+    public void update(double dtSeconds) {
+        double alpha = 1 - Math.exp(-dtSeconds / Constants.kDriveWheelTimeConstantSeconds);
+        double voltageScale = RobotController.getBatteryVoltage() / 12;
+
+        for (int i = 0; i < 4; i++) {
+            double target = outputs[i] * voltageScale * Constants.kDriveFreeSpeedMetersPerSecond;
+            wheelSpeeds[i] += (target - wheelSpeeds[i]) * alpha;
+        }
+
+        ChassisSpeeds speeds = kinematics.toChassisSpeeds(
+            new MecanumDriveWheelSpeeds(wheelSpeeds[0], wheelSpeeds[1], wheelSpeeds[2], wheelSpeeds[3]));
+
+        pose = pose.exp(new Twist2d(
+            speeds.vxMetersPerSecond * dtSeconds,
+            speeds.vyMetersPerSecond * dtSeconds,
+            speeds.omegaRadiansPerSecond * dtSeconds));
+    }
+
+    public Pose2d getPose() {
+        return pose;
+    }
+
+    public void setPose(Pose2d pose) {
+        this.pose = pose;
+    }
+
+    /*
+     * Wheel speed in meters per second, in the same order as setInputs
+     */
+    public double getWheelSpeed(int wheel) {
+        return wheelSpeeds[wheel];
+    }
+
+    /*
+     * Roughly how much current all four drive motors are pulling, in amps
+     */
+    public double getCurrentDrawAmps() {
+        double voltage = RobotController.getBatteryVoltage();
+        double total = 0;
+
+        for (int i = 0; i < 4; i++) {
+            double motorSpeed = wheelSpeeds[i] / Constants.kDriveFreeSpeedMetersPerSecond * kWheelMotor.freeSpeedRadPerSec;
+            total += Math.abs(kWheelMotor.getCurrent(motorSpeed, outputs[i] * voltage));
+        }
+
+        return total;
+    }
+}
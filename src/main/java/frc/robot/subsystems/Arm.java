@@ -2,22 +2,87 @@ package frc.robot.subsystems;
 
 import java.util.function.DoubleSupplier;
 
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.AnalogPotentiometer;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.motorcontrol.Talon;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.sim.JointSim;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.MotorOutput.PowerPriority;
+import frc.robot.util.ProfiledJoint;
+import frc.robot.util.StageTimer;
+import frc.robot.util.SysIdMechanism;
 
 /*
  * The Arm subsystem is pretty straightforward. We have an instance variable that is 
  * the representation of the motor that drives the Arm. We have one component here, public Arm()
  * that is used to "create" the Arm subsystem in RobotContainer, along with two methods (behaviors)
  * which produce commands. These methods that produce commands are described in more detail
+ *
+ * The motor is "wrapped" in a MotorOutput (see util/MotorOutput.java). We talk to armOutput
+ * instead of armMotor directly, so that writing the same value to the motor over and over
+ * (like stop() does) doesn't cost anything.
+ *
+ * The arm also knows where it is, from a potentiometer on its pivot, so it can move itself to one
+ * of the named Presets with goTo(). The joystick (setSpeed) still works as a manual override, see
+ * RobotContainer.
  */
 public class Arm extends SubsystemBase {
     private Talon armMotor;
+    private MotorOutput armOutput;
+
+    private AnalogPotentiometer potentiometer;
+    private ProfiledJoint joint;
+
+    private StageTimer commandTimer;
+
+    // Only created when running in simulation, see simulationPeriodic
+    private JointSim armSim;
+    private StageTimer simTimer;
 
     public Arm() {
         armMotor = new Talon(Constants.kPickupArmPWMID);
+        // The arm is MEDIUM power priority, only scaled down once the head is already scaled, see PowerArbiter.java
+        armOutput = new MotorOutput("Arm", armMotor, PowerPriority.MEDIUM);
+
+        potentiometer = new AnalogPotentiometer(
+            Constants.kArmPotentiometerAnalog,
+            Constants.kArmPotentiometerRangeDegrees,
+            Constants.kArmPotentiometerOffsetDegrees);
+
+        joint = new ProfiledJoint(
+            potentiometer,
+            new TrapezoidProfile.Constraints(
+                Math.toRadians(Constants.kArmMaxVelocityDegreesPerSecond),
+                Math.toRadians(Constants.kArmMaxAccelerationDegreesPerSecondSquared)),
+            new ArmFeedforward(Constants.kArmKS, Constants.kArmKG, Constants.kArmKV, Constants.kArmKA),
+            Constants.kArmKP,
+            Math.toRadians(Constants.kPresetToleranceDegrees),
+            null);
+
+        commandTimer = new StageTimer("Arm", Constants.kCommandBudgetSeconds);
+
+        if (RobotBase.isSimulation()) {
+            simTimer = new StageTimer("ArmSim", Constants.kCommandBudgetSeconds);
+            armSim = new JointSim(
+                DCMotor.getCIM(1),
+                Constants.kSimArmGearing,
+                Constants.kSimArmLengthMeters,
+                Constants.kSimArmMassKg,
+                Constants.kSimArmMinDegrees,
+                Constants.kSimArmMaxDegrees,
+                Constants.kArmStowDegrees,
+                Constants.kArmPotentiometerAnalog,
+                Constants.kArmPotentiometerRangeDegrees,
+                Constants.kArmPotentiometerOffsetDegrees);
+        }
     }
 
     /*
@@ -34,14 +99,99 @@ public class Arm extends SubsystemBase {
      * 
      * DoubleSupplier is some what special in that it can provide values dynamically as opposed to statically.
      * This means that the speed element can be any lambda that returns a double (decimal) value. It can be a static
-     * value, like 0, or .5, etc, or it can be from a dynamic source, like a joystick axis. 
+     * value, like 0, or .5, etc, or it can be from a dynamic source, like a joystick axis.
+     *
+     * The commandTimer calls wrapped around the motor set measure how long each run of the
+     * command takes, and publish those numbers to the "Timing" table in NetworkTables. They
+     * don't change what the arm does, they're only there to help track down slow loops.
      */
     public Command setSpeed(DoubleSupplier speed) {
         return run(() -> {
-            armMotor.set(speed.getAsDouble());
+            commandTimer.start();
+            armOutput.set(speed.getAsDouble());
+            commandTimer.stop();
         });
     }
 
+    /*
+     * This method produces a command which moves the arm to one of the presets and then holds it
+     * there, see util/ProfiledJoint.java for how. Like setSpeed, it runs until something else
+     * needs the arm. RobotContainer ends it as soon as the operator moves the arm joystick.
+     *
+     * runOnce starts the move, and andThen runs the second command once the first is done, so the
+     * move is started once and then followed every loop after. The gravity part of the output is
+     * handed to the MotorOutput separately, so the PowerArbiter never scales it down and lets the
+     * arm drop. finallyDo stops the motor when the command ends, however it ends, so whatever gets
+     * the arm next starts from 0 rather than the last profiled output.
+     */
+    public Command goTo(Preset preset) {
+        return runOnce(() -> joint.start(presetRadians(preset)))
+            .andThen(run(() -> {
+                commandTimer.start();
+                armOutput.set(joint.calculate(), joint.getHoldOutput());
+                commandTimer.stop();
+            }))
+            .finallyDo(() -> armOutput.set(0))
+            .withName("Arm " + preset);
+    }
+
+    private static double presetRadians(Preset preset) {
+        switch (preset) {
+            case FLOOR_PICKUP:
+                return Math.toRadians(Constants.kArmFloorPickupDegrees);
+            case SCORE:
+                return Math.toRadians(Constants.kArmScoreDegrees);
+            case STOW:
+            default:
+                return Math.toRadians(Constants.kArmStowDegrees);
+        }
+    }
+
+    /*
+     * Whether the last goTo has arrived, within kPresetToleranceDegrees
+     */
+    public boolean atGoal() {
+        return joint.atGoal();
+    }
+
+    /*
+     * The arm's angle from the potentiometer, in radians, 0 is level with the floor
+     */
+    public double getAngleRadians() {
+        return joint.getAngle();
+    }
+
+    /*
+     * What SysIdRecorder needs to characterize the arm. The potentiometer gives the angle on the
+     * real robot and in simulation. There's no sensor for the velocity, so on the real robot it's
+     * worked out from how much the angle changes across a few samples (see SysIdRecorder). In
+     * simulation the physics model only moves every 20ms, far slower than the samples are taken,
+     * so the velocity comes straight from the model instead.
+     * The tests stop short of the ends of the arm's travel, at kSysIdArmMinDegrees and
+     * kSysIdArmMaxDegrees.
+     */
+    public SysIdMechanism sysIdMechanism() {
+        return new SysIdMechanism(
+            "Arm",
+            this,
+            Constants.kSysIdArmStepVolts,
+            volts -> armOutput.set(volts / RobotController.getBatteryVoltage()),
+            () -> armOutput.get() * RobotController.getBatteryVoltage(),
+            joint::getAngle,
+            armSim == null ? null : armSim::getVelocityRadiansPerSecond,
+            "Radian",
+            () -> joint.getAngle() > Math.toRadians(Constants.kSysIdArmMaxDegrees),
+            () -> joint.getAngle() < Math.toRadians(Constants.kSysIdArmMinDegrees),
+            null);
+    }
+
+    /*
+     * The last value sent to the motor, used by the telemetry log
+     */
+    public double getOutput() {
+        return armOutput.get();
+    }
+
     /*
      * This method produces a command which stops the arms motion. It actually makes use of setSpeed
      * discussed previously. We provide a lambda which provides a static value of 0, to indicate that
@@ -50,4 +200,24 @@ public class Arm extends SubsystemBase {
     public Command stop() {
         return setSpeed(() -> 0);
     }
+
+    /*
+     * In simulation, the motor output drives a physics model of the arm (see sim/JointSim.java),
+     * which sets the simulated potentiometer. The model has its own simTimer, so what the physics
+     * costs (WPILib's model creates new matrices every step) isn't mixed up with what the robot
+     * code costs.
+     */
+    @Override
+    public void simulationPeriodic() {
+        simTimer.start();
+        armSim.update(armMotor.get(), TimedRobot.kDefaultPeriod);
+        simTimer.stop();
+    }
+
+    /*
+     * The simulation model, or null when running on the real robot
+     */
+    public JointSim getSimulation() {
+        return armSim;
+    }
 }
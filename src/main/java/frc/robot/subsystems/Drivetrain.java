@@ -2,11 +2,26 @@ package frc.robot.subsystems;
 
 import java.util.function.DoubleSupplier;
 
-import edu.wpi.first.wpilibj.drive.MecanumDrive;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.motorcontrol.Talon;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.auto.ProfilePlayer;
+import frc.robot.camera.VisionPipeline;
+import frc.robot.camera.VisionResult;
+import frc.robot.sim.MecanumDrivetrainSim;
+import frc.robot.util.MecanumOutputStage;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.StageTimer;
+import frc.robot.util.SysIdMechanism;
 
 /*
  * YOU SHOULD TAKE A LOOK AT THE ARM SUBSYSTEM FIRST!
@@ -14,7 +29,14 @@ import frc.robot.Constants;
  * 
  * The Drivetrain subsystem has a few more pieces than say the Arm or HeadPivot subsystem.
  * But it isn't significantly more complicated. Several Talon instance variables, one for
- * each motor on the Drivetrain, and then a composite representation of the MecanumDrive as a whole.
+ * each motor on the Drivetrain, each with a MotorOutput in front of it.
+ *
+ * WPILib has a MecanumDrive class that does the driving math for you, but every time you call
+ * it, it creates several new objects (a Translation2d and a WheelSpeeds). Creating objects every
+ * loop means the garbage collector has to stop and clean up after us now and then, which feels
+ * like a stutter while driving. So the math is done by our own MecanumOutputStage (see
+ * util/MecanumOutputStage.java), which creates nothing, and also smooths out the driver's
+ * inputs so the wheels don't slip.
  */
 public class Drivetrain extends SubsystemBase {
     private Talon frontLeft;
@@ -22,15 +44,29 @@ public class Drivetrain extends SubsystemBase {
     private Talon rearLeft;
     private Talon rearRight;
 
-    private MecanumDrive drive;
+    private MotorOutput frontLeftOutput;
+    private MotorOutput frontRightOutput;
+    private MotorOutput rearLeftOutput;
+    private MotorOutput rearRightOutput;
+
+    private MecanumOutputStage outputStage;
+
+    // Filled in by the vision pipeline every loop while aligning, see alignToTargetCommand
+    private VisionResult visionResult = new VisionResult();
+
+    private StageTimer commandTimer;
+
+    // Only created when running in simulation, see simulationPeriodic
+    private MecanumDrivetrainSim driveSim;
+    private StageTimer simTimer;
+    private Field2d simField;
 
     /*
-     * When constructing a MecanumDrive, we have to invert the motors on one side
-     * or the other to make sure everything moves the right way. In this case
-     * we invert the motors on the right side. 
-     * 
-     * Note that the order of the motors when building a MecanumDrive variable is
-     * very important. If the order is wrong, the driving will be wrong. 
+     * For a mecanum drive, we have to invert the motors on one side or the other to make
+     * sure everything moves the right way. In this case we invert the motors on the right side.
+     *
+     * MecanumDrive used to turn on motor safety for us, so now we turn it on for each Talon.
+     * If the drive command stops running, the motors stop on their own.
      */
     public Drivetrain() {
         frontLeft = new Talon(Constants.kFrontLeftPWMID);
@@ -41,7 +77,32 @@ public class Drivetrain extends SubsystemBase {
         frontRight.setInverted(true);
         rearRight.setInverted(true);
 
-        drive = new MecanumDrive(frontLeft, rearLeft, frontRight, rearRight);
+        frontLeft.setSafetyEnabled(true);
+        frontRight.setSafetyEnabled(true);
+        rearLeft.setSafetyEnabled(true);
+        rearRight.setSafetyEnabled(true);
+
+        frontLeftOutput = new MotorOutput("FrontLeft", frontLeft);
+        frontRightOutput = new MotorOutput("FrontRight", frontRight);
+        rearLeftOutput = new MotorOutput("RearLeft", rearLeft);
+        rearRightOutput = new MotorOutput("RearRight", rearRight);
+
+        /*
+         * There's no gyro on the robot yet, so there's no heading to give the output stage
+         * and field-oriented driving stays off. In simulation the model knows the heading.
+         */
+        outputStage = new MecanumOutputStage(RobotBase.isSimulation()
+            ? () -> driveSim.getPose().getRotation().getRadians()
+            : null);
+
+        commandTimer = new StageTimer("Drivetrain", Constants.kCommandBudgetSeconds);
+
+        if (RobotBase.isSimulation()) {
+            simTimer = new StageTimer("DrivetrainSim", Constants.kCommandBudgetSeconds);
+            driveSim = new MecanumDrivetrainSim();
+            simField = new Field2d();
+            SmartDashboard.putData("Field", simField);
+        }
     }
 
     /*
@@ -55,11 +116,177 @@ public class Drivetrain extends SubsystemBase {
      */
     public Command teleopCommand(DoubleSupplier forwardBack, DoubleSupplier strafe, DoubleSupplier rot) {
         return run(() -> {
-            drive.driveCartesian(
+            commandTimer.start();
+            drive(
                 forwardBack.getAsDouble(), 
                 strafe.getAsDouble(), 
                 rot.getAsDouble()
             );
+            commandTimer.stop();
         });
     }
+
+    /*
+     * alignToTargetCommand drives just like teleopCommand, except that while the vision pipeline
+     * sees a game piece, it takes over the rotation and turns the robot to put the game piece in
+     * the middle of the camera's view. The driver keeps control of forward/back and strafing.
+     *
+     * If there's no target, or the newest result is older than kVisionMaxResultAgeSeconds, the
+     * driver's rotation is used as normal.
+     *
+     * Reading the result never waits on the vision thread, see VisionPipeline.read().
+     */
+    public Command alignToTargetCommand(VisionPipeline vision, DoubleSupplier forwardBack, DoubleSupplier strafe, DoubleSupplier rot) {
+        return run(() -> {
+            commandTimer.start();
+
+            double rotation = rot.getAsDouble();
+
+            if (vision.read(visionResult)
+                && visionResult.hasTarget
+                && WPIUtilJNI.now() - visionResult.captureTimeMicros < Constants.kVisionMaxResultAgeSeconds * 1e6) {
+                // Target to the right (positive x) means turn clockwise, which is negative rotation
+                rotation = -Constants.kVisionAlignP * visionResult.targetX;
+            }
+
+            drive(forwardBack.getAsDouble(), strafe.getAsDouble(), rotation);
+
+            commandTimer.stop();
+        }).withName("Drivetrain AlignToTarget");
+    }
+
+    /*
+     * followProfileCommand plays back a precomputed autonomous profile (see auto/ProfilePlayer.java).
+     * The profile's outputs skip the deadband and slew rate limiting, they were already made smooth
+     * ahead of time, and are always robot-oriented. The command ends when the profile does, after
+     * sending one last loop of zeros.
+     */
+    public Command followProfileCommand(ProfilePlayer player) {
+        return runOnce(player::start)
+            .andThen(run(() -> {
+                commandTimer.start();
+
+                player.update();
+                outputStage.calculateUnfiltered(player.getForward(), player.getStrafe(), player.getRotation());
+                setOutputs();
+
+                commandTimer.stop();
+            }))
+            .until(player::isDone);
+    }
+
+    /*
+     * Switches between robot-oriented and field-oriented driving. This robot doesn't have a gyro
+     * yet, so on the real robot this does nothing until one is added (see the constructor). In
+     * simulation the heading comes from the physics model.
+     *
+     * This uses Commands.runOnce instead of the subsystem's own runOnce, so it doesn't require the
+     * Drivetrain. Requiring it would interrupt whatever drive command is running (and end an
+     * align the driver is still holding the button for) just to flip a setting.
+     */
+    public Command toggleFieldOrientedCommand() {
+        return Commands.runOnce(() -> outputStage.setFieldOriented(!outputStage.isFieldOrientedRequested()))
+            .withName("Drivetrain FieldOriented");
+    }
+
+    private void drive(double xSpeed, double ySpeed, double zRotation) {
+        outputStage.calculate(xSpeed, ySpeed, zRotation);
+        setOutputs();
+    }
+
+    private void setOutputs() {
+        frontLeftOutput.set(outputStage.getFrontLeft());
+        frontRightOutput.set(outputStage.getFrontRight());
+        rearLeftOutput.set(outputStage.getRearLeft());
+        rearRightOutput.set(outputStage.getRearRight());
+    }
+
+    /*
+     * What SysIdRecorder needs to characterize the drivetrain driving straight forward and back.
+     * The robot has no drive encoders, so on the real robot only the voltage can be recorded,
+     * which isn't enough for the SysId tool. Encoders on the wheels (or at least one per side)
+     * need to be added before the results mean anything. In simulation the model's position and
+     * wheel speeds stand in for them.
+     */
+    public SysIdMechanism sysIdMechanism() {
+        return new SysIdMechanism(
+            "Drivetrain",
+            this,
+            Constants.kSysIdDriveStepVolts,
+            this::setVoltage,
+            () -> frontLeftOutput.get() * RobotController.getBatteryVoltage(),
+            driveSim == null ? null : () -> driveSim.getPose().getX(),
+            driveSim == null ? null : () -> (driveSim.getWheelSpeed(0) + driveSim.getWheelSpeed(1)
+                + driveSim.getWheelSpeed(2) + driveSim.getWheelSpeed(3)) / 4,
+            "Meter",
+            () -> false,
+            () -> false,
+            null);
+    }
+
+    // Every wheel gets the same voltage, straight forward or back, skipping the output stage
+    private void setVoltage(double volts) {
+        double output = volts / RobotController.getBatteryVoltage();
+
+        frontLeftOutput.set(output);
+        frontRightOutput.set(output);
+        rearLeftOutput.set(output);
+        rearRightOutput.set(output);
+    }
+
+    /*
+     * The values last sent to each drive motor, used by the telemetry log
+     */
+    public double getFrontLeftOutput() {
+        return frontLeftOutput.get();
+    }
+
+    public double getFrontRightOutput() {
+        return frontRightOutput.get();
+    }
+
+    public double getRearLeftOutput() {
+        return rearLeftOutput.get();
+    }
+
+    public double getRearRightOutput() {
+        return rearRightOutput.get();
+    }
+
+    /*
+     * periodic runs every loop no matter what command is running. While the robot is disabled
+     * we keep the output stage's slew rate limiters at 0, so when the robot is enabled it ramps
+     * up from standing still instead of jumping to whatever the joystick says.
+     */
+    @Override
+    public void periodic() {
+        if (DriverStation.isDisabled()) {
+            outputStage.reset(0, 0, 0);
+        }
+    }
+
+    /*
+     * simulationPeriodic is like periodic, but it only runs when the code is running in
+     * simulation instead of on the real robot. We use it to feed the motor outputs into a
+     * physics model of the drivetrain (see sim/MecanumDrivetrainSim.java), and show where
+     * the model thinks the robot is on a field picture. Like the Arm's, it's timed on its own.
+     */
+    @Override
+    public void simulationPeriodic() {
+        simTimer.start();
+
+        driveSim.setInputs(frontLeft.get(), frontRight.get(), rearLeft.get(), rearRight.get());
+        driveSim.update(TimedRobot.kDefaultPeriod);
+
+        simField.setRobotPose(driveSim.getPose());
+
+        simTimer.stop();
+    }
+
+    /*
+     * The simulation model, or null when running on the real robot
+     */
+    public MecanumDrivetrainSim getSimulation() {
+        return driveSim;
+    }
 }
@@ -2,10 +2,21 @@ package frc.robot.subsystems;
 
 import java.util.function.DoubleSupplier;
 
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.AnalogPotentiometer;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.motorcontrol.Talon;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.sim.JointSim;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.MotorOutput.PowerPriority;
+import frc.robot.util.ProfiledJoint;
+import frc.robot.util.StageTimer;
 
 /*
  * YOU SHOULD TAKE A LOOK AT THE ARM SUBSYSTEM FIRST!
@@ -14,21 +25,126 @@ import frc.robot.Constants;
  * The HeadPivot subsystem is identical to the Arm subsystem, with the exception 
  * of some differences in variable naming. You should look at the Arm subsystem for 
  * an explanation of how all this works. 
+ *
+ * The one real difference is that the head's potentiometer measures its angle from the arm, not
+ * from the floor. Gravity pulls on the angle from the floor, so the head is handed the arm's
+ * angle (armAngle) to add on when working out how hard gravity is pulling, see ProfiledJoint.java.
  */
 public class HeadPivot extends SubsystemBase {
     private Talon headPivotMotor;
+    private MotorOutput headPivotOutput;
 
-    public HeadPivot() {
+    private AnalogPotentiometer potentiometer;
+    private ProfiledJoint joint;
+
+    private StageTimer commandTimer;
+
+    // Only created when running in simulation, see simulationPeriodic
+    private JointSim headPivotSim;
+    private StageTimer simTimer;
+
+    public HeadPivot(DoubleSupplier armAngle) {
         headPivotMotor = new Talon(Constants.kPickupAnglePWMID);
+        // LOW power priority, one of the first things scaled down when the battery sags, see PowerArbiter.java
+        headPivotOutput = new MotorOutput("HeadPivot", headPivotMotor, PowerPriority.LOW);
+
+        potentiometer = new AnalogPotentiometer(
+            Constants.kHeadPivotPotentiometerAnalog,
+            Constants.kHeadPivotPotentiometerRangeDegrees,
+            Constants.kHeadPivotPotentiometerOffsetDegrees);
+
+        joint = new ProfiledJoint(
+            potentiometer,
+            new TrapezoidProfile.Constraints(
+                Math.toRadians(Constants.kHeadPivotMaxVelocityDegreesPerSecond),
+                Math.toRadians(Constants.kHeadPivotMaxAccelerationDegreesPerSecondSquared)),
+            new ArmFeedforward(Constants.kHeadPivotKS, Constants.kHeadPivotKG, Constants.kHeadPivotKV, Constants.kHeadPivotKA),
+            Constants.kHeadPivotKP,
+            Math.toRadians(Constants.kPresetToleranceDegrees),
+            armAngle);
+
+        commandTimer = new StageTimer("HeadPivot", Constants.kCommandBudgetSeconds);
+
+        if (RobotBase.isSimulation()) {
+            simTimer = new StageTimer("HeadPivotSim", Constants.kCommandBudgetSeconds);
+            headPivotSim = new JointSim(
+                DCMotor.getBag(1),
+                Constants.kSimHeadPivotGearing,
+                Constants.kSimHeadPivotLengthMeters,
+                Constants.kSimHeadPivotMassKg,
+                Constants.kSimHeadPivotMinDegrees,
+                Constants.kSimHeadPivotMaxDegrees,
+                Constants.kHeadPivotStowDegrees,
+                Constants.kHeadPivotPotentiometerAnalog,
+                Constants.kHeadPivotPotentiometerRangeDegrees,
+                Constants.kHeadPivotPotentiometerOffsetDegrees);
+        }
     }
 
     public Command setSpeed(DoubleSupplier speed) {
         return run(() -> {
-            headPivotMotor.set(speed.getAsDouble());
+            commandTimer.start();
+            headPivotOutput.set(speed.getAsDouble());
+            commandTimer.stop();
         });
     }
 
+    public Command goTo(Preset preset) {
+        return runOnce(() -> joint.start(presetRadians(preset)))
+            .andThen(run(() -> {
+                commandTimer.start();
+                headPivotOutput.set(joint.calculate(), joint.getHoldOutput());
+                commandTimer.stop();
+            }))
+            .finallyDo(() -> headPivotOutput.set(0))
+            .withName("HeadPivot " + preset);
+    }
+
+    private static double presetRadians(Preset preset) {
+        switch (preset) {
+            case FLOOR_PICKUP:
+                return Math.toRadians(Constants.kHeadPivotFloorPickupDegrees);
+            case SCORE:
+                return Math.toRadians(Constants.kHeadPivotScoreDegrees);
+            case STOW:
+            default:
+                return Math.toRadians(Constants.kHeadPivotStowDegrees);
+        }
+    }
+
+    public boolean atGoal() {
+        return joint.atGoal();
+    }
+
+    /*
+     * The head's angle from the arm, in radians
+     */
+    public double getAngleRadians() {
+        return joint.getAngle();
+    }
+
+    /*
+     * The last value sent to the motor, used by the telemetry log
+     */
+    public double getOutput() {
+        return headPivotOutput.get();
+    }
+
     public Command stop() {
         return setSpeed(() -> 0);
     }
+
+    @Override
+    public void simulationPeriodic() {
+        simTimer.start();
+        headPivotSim.update(headPivotMotor.get(), TimedRobot.kDefaultPeriod);
+        simTimer.stop();
+    }
+
+    /*
+     * The simulation model, or null when running on the real robot
+     */
+    public JointSim getSimulation() {
+        return headPivotSim;
+    }
 }
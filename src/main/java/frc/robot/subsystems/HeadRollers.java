@@ -6,6 +6,9 @@ import edu.wpi.first.wpilibj.motorcontrol.Talon;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.MotorOutput.PowerPriority;
+import frc.robot.util.StageTimer;
 
 /*
  * YOU SHOULD TAKE A LOOK AT THE ARM SUBSYSTEM FIRST!
@@ -19,17 +22,33 @@ import frc.robot.Constants;
  */
 public class HeadRollers extends SubsystemBase {
     private Talon headRollerMotor;
+    private MotorOutput headRollerOutput;
+
+    private StageTimer commandTimer;
 
     public HeadRollers() {
         headRollerMotor = new Talon(Constants.kPickupHeadPWMID);
+        // The rollers are LOW power priority, see PowerArbiter.java
+        headRollerOutput = new MotorOutput("HeadRollers", headRollerMotor, PowerPriority.LOW);
+
+        commandTimer = new StageTimer("HeadRollers", Constants.kCommandBudgetSeconds);
     }
 
     public Command setSpeed(DoubleSupplier speed) {
         return run(() -> {
-            headRollerMotor.set(speed.getAsDouble());
+            commandTimer.start();
+            headRollerOutput.set(speed.getAsDouble());
+            commandTimer.stop();
         });
     }
 
+    /*
+     * The last value sent to the motor, used by the telemetry log
+     */
+    public double getOutput() {
+        return headRollerOutput.get();
+    }
+
     public Command stop() {
         return setSpeed(() -> 0);
     }
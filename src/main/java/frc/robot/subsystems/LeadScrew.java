@@ -3,14 +3,34 @@ package frc.robot.subsystems;
 import java.util.function.DoubleSupplier;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.motorcontrol.Talon;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.Tuning;
+import frc.robot.sim.LeadScrewSim;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.StageTimer;
+import frc.robot.util.SysIdMechanism;
+import frc.robot.util.TunableNumber;
 
 /*
  * YOU SHOULD TAKE A LOOK AT THE ARM SUBSYSTEM FIRST!
@@ -27,6 +47,28 @@ import frc.robot.Constants;
  * We also make use of a DoubleSolenoid object, which is used to trigger the shifter
  * on the gearbox. You have to set this to either "Forward" or "Reverse" to change
  * the high gear/low gear state of the gearbox.
+ *
+ * Checking the switches once every 20ms loop isn't fast enough when the screw is moving at
+ * full speed in high gear, it can run well past the switch before the next loop comes around.
+ * So each switch also has an "interrupt". An interrupt is a little piece of code that the
+ * roboRIO runs the moment a switch gets pressed, no matter what the rest of the robot code is
+ * doing. Our interrupts stop the motors right away, and "latch" (remember) that the lead screw
+ * hit that switch. The latch keeps the motors stopped in that direction until the operator asks
+ * the lead screw to go the other way.
+ *
+ * The lead screw also doesn't run its motor from the normal 20ms robot loop at all. It has its
+ * own, much faster loop (see fastLoop below) that runs on a Notifier every kLeadScrewLoopPeriodSeconds.
+ * The commands (setSpeed, setShifter, stop) don't touch any hardware, they just leave a "request"
+ * in a volatile variable, and the fast loop picks up whatever the latest request is the next time
+ * it runs. volatile just means every thread always sees the newest value, which is all we need
+ * for handing one number from one thread to another, no locking required.
+ *
+ * Automatic shifting: high gear is three times faster with no load, but when the lead screw is
+ * lifting the robot, high gear bogs down and low gear ends up faster. With auto-shift on,
+ * periodic() works out how loaded the motors are and picks the faster gear, see updateAutoShift.
+ * It starts off until the current readings are checked (see kLeadScrewAutoShiftByDefault), and
+ * the auto-shift button toggles it. Pressing either manual shift button overrides it, it sets
+ * that gear and turns auto-shift off until it's toggled back on.
  */
 public class LeadScrew extends SubsystemBase {
     /*
@@ -42,19 +84,117 @@ public class LeadScrew extends SubsystemBase {
     }
 
     private Talon leadScrewMotors;
+    private MotorOutput leadScrewOutput;
 
     private DigitalInput upSwitch;
     private DigitalInput downSwitch;
 
+    private AsynchronousInterrupt upInterrupt;
+    private AsynchronousInterrupt downInterrupt;
+
+    /*
+     * The interrupts run on their own threads, so everything that touches the motor or
+     * the latches happens while holding limitLock. That way an interrupt can never land
+     * half way through the fast loop deciding what to do.
+     */
+    private final Object limitLock = new Object();
+    private boolean upLatched;
+    private boolean downLatched;
+
+    private double maxLimitStopLatency;
+    private DoublePublisher limitStopLatencyPublisher;
+    private DoublePublisher maxLimitStopLatencyPublisher;
+
     private DoubleSolenoid shifter;
 
+    // Automatic shifting, see updateAutoShift
+    private volatile boolean autoShift = Constants.kLeadScrewAutoShiftByDefault;
+    private DoubleSupplier motorCurrent;
+    private double shiftLoad;
+    private double breakEvenLoad;
+    private double lastShiftTime = Double.NEGATIVE_INFINITY;
+    private volatile long shiftCount;
+    private int loopsUntilPublish;
+    private DoublePublisher shiftLoadPublisher;
+    private BooleanPublisher autoShiftPublisher;
+    private IntegerPublisher shiftCountPublisher;
+
+    private StageTimer commandTimer;
+
+    /*
+     * The requests handed from the commands to the fast loop. requestedShifter starts out
+     * as null, meaning nobody has asked for a gear yet, so the shifter is left alone.
+     */
+    private volatile double requestedSpeed;
+    private volatile ShifterState requestedShifter;
+    private volatile ShifterState appliedShifter;
+
+    private Notifier fastLoop;
+    private long periodNanos;
+    private long lastLoopNanos;
+    private StageTimer fastLoopTimer;
+    private StageTimer fastLoopJitter;
+    private TunableNumber deadband;
+
+    // Only created when running in simulation, see simulationPeriodic
+    private LeadScrewSim leadScrewSim;
+    private DIOSim upSwitchSim;
+    private DIOSim downSwitchSim;
+
     public LeadScrew() {
+        deadband = Tuning.kDeadband;
+
         leadScrewMotors = new Talon(Constants.kLeadScrewPWMID);
+        leadScrewOutput = new MotorOutput("LeadScrew", leadScrewMotors);
 
         upSwitch = new DigitalInput(Constants.kLeadScrewUpLimitDIO);
         downSwitch = new DigitalInput(Constants.kLeadScrewDownLimitDIO);
 
+        // A switch reads true when pressed, so we want to know about the rising edge (false -> true)
+        upInterrupt = new AsynchronousInterrupt(upSwitch, (rising, falling) -> limitSwitchPressed(true));
+        upInterrupt.setInterruptEdges(true, false);
+        upInterrupt.enable();
+
+        downInterrupt = new AsynchronousInterrupt(downSwitch, (rising, falling) -> limitSwitchPressed(false));
+        downInterrupt.setInterruptEdges(true, false);
+        downInterrupt.enable();
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("LeadScrew");
+        limitStopLatencyPublisher = table.getDoubleTopic("limitStopLatencyUs").publish();
+        maxLimitStopLatencyPublisher = table.getDoubleTopic("maxLimitStopLatencyUs").publish();
+        shiftLoadPublisher = table.getDoubleTopic("shiftLoad").publish();
+        autoShiftPublisher = table.getBooleanTopic("autoShift").publish();
+        shiftCountPublisher = table.getIntegerTopic("shifts").publish();
+
+        /*
+         * With a gear ratio of r between the gears, high gear is faster as long as the load is
+         * under r / (r + 1) of the high gear stall torque. With the 3 to 1 gears that's 75%.
+         */
+        double ratio = Constants.kLeadScrewHighGearSpeedMetersPerSecond / Constants.kLeadScrewLowGearSpeedMetersPerSecond;
+        breakEvenLoad = ratio / (ratio + 1);
+
         shifter = new DoubleSolenoid(PneumaticsModuleType.CTREPCM, Constants.kLeadScrewShifterH, Constants.kLeadScrewShifterL);
+
+        commandTimer = new StageTimer("LeadScrew", Constants.kCommandBudgetSeconds);
+
+        /*
+         * The jitter timer records how far each run of the fast loop landed from where it
+         * should have (one period after the last run). If its numbers grow, the fast loop
+         * isn't keeping to its schedule.
+         */
+        periodNanos = (long) (Constants.kLeadScrewLoopPeriodSeconds * 1e9);
+        fastLoopTimer = new StageTimer("LeadScrewFastLoop", Constants.kLeadScrewLoopPeriodSeconds);
+        fastLoopJitter = new StageTimer("LeadScrewFastLoopJitter", Constants.kLeadScrewJitterBudgetSeconds);
+
+        fastLoop = new Notifier(this::fastLoop);
+        fastLoop.setName("LeadScrew");
+        fastLoop.startPeriodic(Constants.kLeadScrewLoopPeriodSeconds);
+
+        if (RobotBase.isSimulation()) {
+            leadScrewSim = new LeadScrewSim();
+            upSwitchSim = new DIOSim(upSwitch);
+            downSwitchSim = new DIOSim(downSwitch);
+        }
     }
 
     /*
@@ -72,16 +212,92 @@ public class LeadScrew extends SubsystemBase {
     public boolean getDownSwitchValue() {
         return downSwitch.get();
     }
+
+    /*
+     * Whether the lead screw is all the way up, the same way isAtBottom works
+     */
+    public boolean isAtTop() {
+        synchronized (limitLock) {
+            return upLatched || upSwitch.get();
+        }
+    }
+
+    /*
+     * Whether the lead screw is all the way down, either the switch is pressed right now or it
+     * was hit and latched (see limitSwitchPressed). Used to end the stow macro's lead screw phase.
+     */
+    public boolean isAtBottom() {
+        synchronized (limitLock) {
+            return downLatched || downSwitch.get();
+        }
+    }
+
+    /*
+     * These two are for the telemetry log, they report what the fast loop last did
+     */
+    public double getOutput() {
+        return leadScrewOutput.get();
+    }
+
+    public boolean isHighGear() {
+        return appliedShifter == ShifterState.HIGH;
+    }
+
+    /*
+     * This is what the interrupts run the moment a switch is pressed. If the motors are
+     * driving toward that switch they get stopped immediately, and either way the switch
+     * gets latched.
+     *
+     * It also measures how long it took from the switch actually being pressed (the roboRIO
+     * timestamps the edge in hardware) to the motors being stopped, and publishes it to
+     * NetworkTables as "LeadScrew/limitStopLatencyUs". That works in simulation too, flipping
+     * the switch with DIOSim fires the interrupt just like the real switch would.
+     */
+    private void limitSwitchPressed(boolean up) {
+        synchronized (limitLock) {
+            double output = leadScrewOutput.get();
+
+            if (up) {
+                upLatched = true;
+
+                if (output > 0) {
+                    leadScrewOutput.set(0);
+                }
+            } else {
+                downLatched = true;
+
+                if (output < 0) {
+                    leadScrewOutput.set(0);
+                }
+            }
+
+            double edge = up ? upInterrupt.getRisingTimestamp() : downInterrupt.getRisingTimestamp();
+            double latency = (Timer.getFPGATimestamp() - edge) * 1e6;
+
+            maxLimitStopLatency = Math.max(maxLimitStopLatency, latency);
+            limitStopLatencyPublisher.set(latency);
+            maxLimitStopLatencyPublisher.set(maxLimitStopLatency);
+        }
+    }
+
+    /*
+     * Stops the Notifier from running fastLoop, so the benchmarks can call fastLoop themselves
+     * without racing the background thread over the loop timing. Package-private for the same
+     * reason fastLoop is, nothing on the robot should ever stop the fast loop.
+     */
+    void stopFastLoop() {
+        fastLoop.stop();
+    }
     
     /*
-     * The setSpeed method here is significantly more complicated than the setSpeeds
-     * we see elsewhere. It still uses run, but has some internal logic to help
+     * fastLoop is what actually runs the lead screw, the Notifier calls it every
+     * kLeadScrewLoopPeriodSeconds on its own thread. It has some internal logic to help
      * manage when the motor should run, and stop it from running in a particular direction
      * if certain switches are pressed. 
      * 
      * The plain english version of this is:
      * 
-     * Store the current desired speed in a variable called desired
+     * Store the latest requested speed in a variable called desired (0 if the robot is disabled)
      * if the desired speed is less than 0 (i.e. we want to go down)
      *   if the down switch is pressed
      *      stop the motors
@@ -92,28 +308,88 @@ public class LeadScrew extends SubsystemBase {
      *      stop the motors
      *   otherwise, if the up switch is not pressed
      *      run the motors at the desired speed
+     * if a different gear has been requested, set the shifter
      * 
      * All of this comes together to make sure that the robot can't tear itself apart by
      * running the motors when the lead screw is all the way at the top or all the way at 
      * the bottom
+     * 
+     * On top of that, a latched switch (see limitSwitchPressed) counts as pressed, and asking
+     * to go the opposite way is what clears the latch.
+     * 
+     * This is package-private rather than private only so the benchmarks can call it directly.
      */
-    public Command setSpeed(DoubleSupplier speed) {
-        return run(() -> {
-            double desired = speed.getAsDouble();
+    void fastLoop() {
+        long now = System.nanoTime();
+        if (lastLoopNanos != 0) {
+            fastLoopJitter.record(Math.abs(now - lastLoopNanos - periodNanos));
+        }
+        lastLoopNanos = now;
+
+        fastLoopTimer.start();
+
+        // Don't pick back up with a stale request from before the robot was disabled
+        if (!DriverStation.isEnabled()) {
+            requestedSpeed = 0;
+        }
 
-            if(MathUtil.applyDeadband(desired, Constants.kDeadband) < 0) {
-                if (downSwitch.get()) {
-                    leadScrewMotors.set(0);
+        double desired = requestedSpeed;
+        double deadbanded = MathUtil.applyDeadband(desired, deadband.get());
+
+        synchronized (limitLock) {
+            if(deadbanded < 0) {
+                upLatched = false;
+
+                if (downLatched || downSwitch.get()) {
+                    leadScrewOutput.set(0);
                 } else {
-                    leadScrewMotors.set(desired);
+                    leadScrewOutput.set(desired);
                 }
             } else {
-                if (upSwitch.get()) {
-                    leadScrewMotors.set(0);
+                if (deadbanded > 0) {
+                    downLatched = false;
+                }
+
+                if (upLatched || upSwitch.get()) {
+                    leadScrewOutput.set(0);
                 } else {
-                    leadScrewMotors.set(desired);
+                    leadScrewOutput.set(desired);
                 }
             }
+        }
+
+        ShifterState shifterState = requestedShifter;
+        if (shifterState != null && shifterState != appliedShifter) {
+            if (shifterState == ShifterState.HIGH) {
+                shifter.set(Value.kForward);
+            } else {
+                shifter.set(Value.kReverse);
+            }
+            if (appliedShifter != null) {
+                shiftCount++;
+            }
+            appliedShifter = shifterState;
+        }
+
+        fastLoopTimer.stop();
+    }
+
+    /*
+     * The setSpeed method still uses run, like the setSpeeds we see elsewhere, but all it
+     * does is hand the desired speed over to the fast loop. The limit switch checks happen
+     * in fastLoop above.
+     *
+     * While the motor outputs are inhibited for warm-up (see MotorOutput.setInhibited), the
+     * speed is read but never handed over, so warming up can't leave a speed behind.
+     */
+    public Command setSpeed(DoubleSupplier speed) {
+        return run(() -> {
+            commandTimer.start();
+            double desired = speed.getAsDouble();
+            if (!MotorOutput.isInhibited()) {
+                requestedSpeed = desired;
+            }
+            commandTimer.stop();
         });
     }
 
@@ -128,21 +404,137 @@ public class LeadScrew extends SubsystemBase {
      * can only run one command at a time, this isn't the command you want running forever, because 
      * once the shifter cylinder is set it stays set to whatever you asked for. 
      * 
-     * The plain english version of this is:
-     * 
-     * if state is HIGH
-     *   Set the shifter solenoid to Forward
-     * otherwise, if the state value is anything other than HIGH (i.e. LOW)
-     *   Set the shifter solenoid to Reverse
+     * Like setSpeed, the command only hands the state over. The fast loop is what sets
+     * the shifter solenoid to Forward for HIGH, or Reverse for LOW.
      */
     public Command setShifter(ShifterState state) {
         return runOnce(() -> {
-            if (state == ShifterState.HIGH) {
-                shifter.set(Value.kForward);
-            } else {
-                shifter.set(Value.kReverse);
-            }
-        });
+            autoShift = false;
+            requestedShifter = state;
+        }).withName("LeadScrew Shift " + state);
+    }
+
+    /*
+     * Turns automatic shifting on or off. This one doesn't require the subsystem (it's built
+     * with Commands.runOnce instead of this subsystem's runOnce), so toggling it in the middle
+     * of a climb doesn't interrupt the command that's moving the lead screw.
+     */
+    public Command toggleAutoShift() {
+        return Commands.runOnce(() -> autoShift = !autoShift).withName("LeadScrew AutoShift");
+    }
+
+    /*
+     * Where updateAutoShift gets the motor current from, the two lead screw channels on the
+     * power distribution panel (see PowerArbiter.getLeadScrewCurrent). Without it, the gear is
+     * left alone.
+     */
+    public void setMotorCurrentSupplier(DoubleSupplier motorCurrent) {
+        this.motorCurrent = motorCurrent;
+    }
+
+    @Override
+    public void periodic() {
+        updateAutoShift();
+
+        if (--loopsUntilPublish <= 0) {
+            loopsUntilPublish = Constants.kStageTimerPublishPeriod;
+
+            shiftLoadPublisher.set(shiftLoad);
+            autoShiftPublisher.set(autoShift);
+            shiftCountPublisher.set(shiftCount);
+        }
+    }
+
+    /*
+     * Picks the gear while auto-shift is on.
+     *
+     * A DC motor's current goes up in a straight line with the load on it. So dividing the current
+     * by the stall current at the output we're asking for gives how much of the available torque
+     * the load is taking. In low gear the same load only takes a third of the torque, so that's
+     * multiplied back up, and shiftLoad is always "the load in high gear terms", whichever gear
+     * we're in.
+     *
+     * shiftLoad is smoothed, then compared against the break even load (see the constructor),
+     * with kAutoShiftHysteresis either side of it so a load right at the break even point doesn't
+     * flip back and forth. On top of that, there's at least kAutoShiftMinIntervalSeconds between
+     * shifts. Every shift uses air, so fewer shifts means the compressor runs less.
+     *
+     * The estimate needs the motors to be working, so when the output is small (or the robot is
+     * disabled) the gear is left as it is.
+     *
+     * A current reading of about 0 while the motors are being driven hard can't be real, it means
+     * the current is being read from the wrong PDP channels (or not at all). Believing it would
+     * look like no load and shift into high gear in the middle of a climb, so the gear is held.
+     */
+    private void updateAutoShift() {
+        double output = Math.abs(leadScrewOutput.get());
+
+        if (!autoShift || motorCurrent == null || DriverStation.isDisabled() || output < Constants.kAutoShiftMinOutput) {
+            shiftLoad = 0;
+            return;
+        }
+
+        double current = motorCurrent.getAsDouble();
+        if (output >= Constants.kAutoShiftCurrentCheckOutput && current < Constants.kAutoShiftMinCurrentAmps) {
+            return;
+        }
+
+        boolean highGear = appliedShifter != ShifterState.LOW;
+        double available = output * RobotController.getBatteryVoltage() / 12 * Constants.kLeadScrewStallAmps;
+        double load = current / available;
+        if (!highGear) {
+            load *= Constants.kLeadScrewHighGearSpeedMetersPerSecond / Constants.kLeadScrewLowGearSpeedMetersPerSecond;
+        }
+
+        shiftLoad += (load - shiftLoad) * (1 - Math.exp(-TimedRobot.kDefaultPeriod / Constants.kAutoShiftFilterSeconds));
+
+        ShifterState wanted = highGear ? ShifterState.HIGH : ShifterState.LOW;
+        if (highGear && shiftLoad > breakEvenLoad + Constants.kAutoShiftHysteresis) {
+            wanted = ShifterState.LOW;
+        } else if (!highGear && shiftLoad < breakEvenLoad - Constants.kAutoShiftHysteresis) {
+            wanted = ShifterState.HIGH;
+        }
+
+        double now = Timer.getFPGATimestamp();
+        if (wanted != appliedShifter && wanted != requestedShifter && now - lastShiftTime >= Constants.kAutoShiftMinIntervalSeconds) {
+            requestedShifter = wanted;
+            lastShiftTime = now;
+        }
+    }
+
+    /*
+     * What SysIdRecorder needs to characterize the lead screw in one gear. Each test shifts into
+     * that gear first (and turns auto-shift off), and hands its voltage to the fast loop like
+     * setSpeed does, so the limit switches still protect it. The tests stop at the limit switches.
+     *
+     * There's no encoder on the lead screw, so on the real robot only the voltage can be recorded,
+     * one needs to be added before the results mean anything. In simulation the model's position
+     * and velocity stand in for it.
+     */
+    public SysIdMechanism sysIdMechanism(ShifterState gear) {
+        return new SysIdMechanism(
+            gear == ShifterState.HIGH ? "LeadScrewHigh" : "LeadScrewLow",
+            this,
+            Constants.kSysIdLeadScrewStepVolts,
+            volts -> requestedSpeed = volts / RobotController.getBatteryVoltage(),
+            () -> leadScrewOutput.get() * RobotController.getBatteryVoltage(),
+            leadScrewSim == null ? null : leadScrewSim::getPosition,
+            leadScrewSim == null ? null : leadScrewSim::getVelocity,
+            "Meter",
+            this::isAtTop,
+            this::isAtBottom,
+            () -> {
+                autoShift = false;
+                requestedShifter = gear;
+            });
+    }
+
+    public boolean isAutoShift() {
+        return autoShift;
+    }
+
+    public long getShiftCount() {
+        return shiftCount;
     }
 
     /*
@@ -153,4 +545,25 @@ public class LeadScrew extends SubsystemBase {
         return setSpeed(() -> 0);
     }
 
+    /*
+     * In simulation, the motor output and the gear the shifter is in drive a physics model
+     * of the lead screw (see sim/LeadScrewSim.java). The model's position is what "presses"
+     * the simulated limit switches, so the limit switch logic and interrupts get exercised
+     * exactly like they would on the robot.
+     */
+    @Override
+    public void simulationPeriodic() {
+        leadScrewSim.setInputs(leadScrewMotors.get(), shifter.get() == Value.kForward);
+        leadScrewSim.update(TimedRobot.kDefaultPeriod);
+
+        upSwitchSim.setValue(leadScrewSim.isAtTop());
+        downSwitchSim.setValue(leadScrewSim.isAtBottom());
+    }
+
+    /*
+     * The simulation model, or null when running on the real robot
+     */
+    public LeadScrewSim getSimulation() {
+        return leadScrewSim;
+    }
 }
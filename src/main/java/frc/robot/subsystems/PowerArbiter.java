@@ -0,0 +1,261 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Compressor;
+import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.PowerDistribution.ModuleType;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.PDPSim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.sim.BatterySagModel;
+import frc.robot.util.MotorOutput;
+import frc.robot.util.MotorOutput.PowerPriority;
+
+/*
+ * PowerArbiter decides who gets to use the battery when there isn't enough to go around.
+ *
+ * Everything on the robot pulls from one battery. When the drivetrain and the lead screw are
+ * both working hard (like during a climb), the battery voltage sags, and if it drops far enough
+ * the roboRIO "browns out" and turns off every motor to protect itself. That's far worse than
+ * any one mechanism being a bit slower.
+ *
+ * So every loop, the arbiter reads the battery voltage and the total current from the power
+ * distribution panel, and guesses where the voltage is headed: if it's been falling, it
+ * assumes it keeps falling at the same rate for kPowerLookaheadSeconds. Based on that guess, it
+ * gives up power in order of priority, before the voltage actually gets low:
+ *
+ *   1. The compressor is turned off (it can catch up later, the tanks hold plenty of air)
+ *   2. The LOW priority outputs (rollers and head pivot) are scaled down
+ *   3. The MEDIUM priority output (the arm) is scaled down
+ *
+ * The drivetrain and the lead screw are CRITICAL and are never scaled, see MotorOutput.
+ *
+ * Scales drop right away, but only come back up slowly (kPowerScaleRecoveryPerSecond), so a
+ * mechanism doesn't snap back to full power and pull the voltage right back down.
+ *
+ * This is a subsystem only so that its periodic() runs every loop, before any command
+ * executes. That way the scales are always up to date by the time the commands set their
+ * motors. It has no commands of its own.
+ *
+ * In simulation, there's no real battery, so a BatterySagModel (see sim/BatterySagModel.java)
+ * adds up the current from the simulated mechanisms and works out what the voltage would be.
+ */
+public class PowerArbiter extends SubsystemBase {
+    private final Compressor compressor;
+    private final PowerDistribution pdp;
+
+    private double lastVoltage;
+    private double lastTime;
+    private double voltageSlope;
+    private double predictedVoltage;
+    private double totalCurrent;
+
+    private boolean compressorAllowed = true;
+    private double compressorOkSince;
+
+    private double lowScale = 1;
+    private double mediumScale = 1;
+
+    private long compressorSheds;
+    private long throttleEvents;
+
+    private int loopsUntilPublish;
+
+    private final DoublePublisher predictedVoltagePublisher;
+    private final DoublePublisher currentPublisher;
+    private final DoublePublisher lowScalePublisher;
+    private final DoublePublisher mediumScalePublisher;
+    private final BooleanPublisher compressorPublisher;
+    private final IntegerPublisher compressorShedsPublisher;
+    private final IntegerPublisher throttleEventsPublisher;
+
+    // Only used when running in simulation, see simulationPeriodic
+    private Drivetrain drivetrain;
+    private LeadScrew leadScrew;
+    private Arm arm;
+    private HeadPivot headPivot;
+    private HeadRollers headRollers;
+    private BatterySagModel batterySim;
+    private PDPSim pdpSim;
+
+    public PowerArbiter(Compressor compressor, Drivetrain drivetrain, LeadScrew leadScrew, Arm arm, HeadPivot headPivot, HeadRollers headRollers) {
+        this.compressor = compressor;
+        pdp = new PowerDistribution(Constants.kPDPCANID, ModuleType.kCTRE);
+
+        lastVoltage = RobotController.getBatteryVoltage();
+        lastTime = Timer.getFPGATimestamp();
+        predictedVoltage = lastVoltage;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Power");
+        predictedVoltagePublisher = table.getDoubleTopic("predictedVoltage").publish();
+        currentPublisher = table.getDoubleTopic("totalCurrent").publish();
+        lowScalePublisher = table.getDoubleTopic("lowPriorityScale").publish();
+        mediumScalePublisher = table.getDoubleTopic("mediumPriorityScale").publish();
+        compressorPublisher = table.getBooleanTopic("compressorAllowed").publish();
+        compressorShedsPublisher = table.getIntegerTopic("compressorSheds").publish();
+        throttleEventsPublisher = table.getIntegerTopic("throttleEvents").publish();
+
+        if (RobotBase.isSimulation()) {
+            this.drivetrain = drivetrain;
+            this.leadScrew = leadScrew;
+            this.arm = arm;
+            this.headPivot = headPivot;
+            this.headRollers = headRollers;
+
+            batterySim = new BatterySagModel();
+            pdpSim = new PDPSim(pdp);
+        }
+    }
+
+    @Override
+    public void periodic() {
+        double now = Timer.getFPGATimestamp();
+        double dt = now - lastTime;
+        double voltage = RobotController.getBatteryVoltage();
+        totalCurrent = pdp.getTotalCurrent();
+
+        if (dt > 0) {
+            // Smooth the slope out, the raw voltage is noisy from one loop to the next
+            double slope = (voltage - lastVoltage) / dt;
+            voltageSlope += (slope - voltageSlope) * Constants.kPowerSlopeFilter;
+        }
+        lastVoltage = voltage;
+        lastTime = now;
+
+        // Only a falling voltage is projected forward, a rising one is taken as it is
+        predictedVoltage = voltage + Math.min(voltageSlope, 0) * Constants.kPowerLookaheadSeconds;
+
+        updateCompressor(now);
+
+        double newLowScale = scaleFor(predictedVoltage, Constants.kPowerLowPriorityFullVolts, Constants.kPowerLowPriorityMinVolts);
+        double newMediumScale = scaleFor(predictedVoltage, Constants.kPowerMediumPriorityFullVolts, Constants.kPowerMediumPriorityMinVolts);
+
+        if (lowScale == 1 && newLowScale < 1) {
+            throttleEvents++;
+        }
+
+        lowScale = approach(lowScale, newLowScale, dt);
+        mediumScale = approach(mediumScale, newMediumScale, dt);
+
+        MotorOutput.setPowerScale(PowerPriority.LOW, lowScale);
+        MotorOutput.setPowerScale(PowerPriority.MEDIUM, mediumScale);
+
+        if (--loopsUntilPublish <= 0) {
+            loopsUntilPublish = Constants.kPowerPublishPeriod;
+            publish();
+        }
+    }
+
+    /*
+     * The compressor is turned off as soon as the voltage is headed low or the current is high,
+     * and only turned back on once things have been fine for kPowerCompressorHoldSeconds
+     */
+    private void updateCompressor(double now) {
+        boolean ok = predictedVoltage > Constants.kPowerCompressorOnVolts
+            && totalCurrent < Constants.kPowerCompressorOffAmps;
+        boolean bad = predictedVoltage < Constants.kPowerCompressorOffVolts
+            || totalCurrent > Constants.kPowerCompressorOffAmps;
+
+        if (!ok) {
+            compressorOkSince = now;
+        }
+
+        if (compressorAllowed && bad) {
+            compressor.disable();
+            compressorAllowed = false;
+            compressorSheds++;
+        } else if (!compressorAllowed && now - compressorOkSince > Constants.kPowerCompressorHoldSeconds) {
+            compressor.enableDigital();
+            compressorAllowed = true;
+        }
+    }
+
+    /*
+     * 1 at or above fullVolts, 0 at or below zeroVolts, and a straight line in between
+     */
+    private static double scaleFor(double volts, double fullVolts, double zeroVolts) {
+        return MathUtil.clamp((volts - zeroVolts) / (fullVolts - zeroVolts), 0, 1);
+    }
+
+    // Drops straight to a lower target, but only climbs toward a higher one at the recovery rate
+    private static double approach(double current, double target, double dt) {
+        if (target <= current) {
+            return target;
+        }
+
+        return Math.min(target, current + Constants.kPowerScaleRecoveryPerSecond * dt);
+    }
+
+    private void publish() {
+        predictedVoltagePublisher.set(predictedVoltage);
+        currentPublisher.set(totalCurrent);
+        lowScalePublisher.set(lowScale);
+        mediumScalePublisher.set(mediumScale);
+        compressorPublisher.set(compressorAllowed);
+        compressorShedsPublisher.set(compressorSheds);
+        throttleEventsPublisher.set(throttleEvents);
+    }
+
+    public double getPredictedVoltage() {
+        return predictedVoltage;
+    }
+
+    public double getTotalCurrent() {
+        return totalCurrent;
+    }
+
+    public double getLowPriorityScale() {
+        return lowScale;
+    }
+
+    public double getMediumPriorityScale() {
+        return mediumScale;
+    }
+
+    public boolean isCompressorAllowed() {
+        return compressorAllowed;
+    }
+
+    /*
+     * What the two lead screw motors are drawing right now, used by the lead screw's automatic
+     * shifting (see LeadScrew.updateAutoShift)
+     */
+    public double getLeadScrewCurrent() {
+        return pdp.getCurrent(Constants.kLeadScrewPDPChannelA) + pdp.getCurrent(Constants.kLeadScrewPDPChannelB);
+    }
+
+    /*
+     * In simulation, add up what every simulated mechanism is drawing, run it through the battery
+     * model, and feed the result back in as the battery voltage and the PDP current. The rollers
+     * don't have a physics model, so they're guessed from their output, and the compressor is
+     * assumed to be running whenever it's allowed to.
+     */
+    @Override
+    public void simulationPeriodic() {
+        double drive = drivetrain.getSimulation().getCurrentDrawAmps();
+        double lift = leadScrew.getSimulation().getCurrentDrawAmps();
+        double mechanisms = arm.getSimulation().getCurrentDrawAmps()
+            + headPivot.getSimulation().getCurrentDrawAmps()
+            + Constants.kSimMechanismAmps * Math.abs(headRollers.getOutput());
+        double air = compressorAllowed ? Constants.kSimCompressorAmps : 0;
+
+        batterySim.update(drive + lift + mechanisms + air, TimedRobot.kDefaultPeriod);
+        RoboRioSim.setVInVoltage(batterySim.getVoltage());
+
+        pdpSim.setCurrent(0, drive);
+        pdpSim.setCurrent(1, mechanisms);
+        pdpSim.setCurrent(2, air);
+        pdpSim.setCurrent(Constants.kLeadScrewPDPChannelA, lift / 2);
+        pdpSim.setCurrent(Constants.kLeadScrewPDPChannelB, lift / 2);
+    }
+}
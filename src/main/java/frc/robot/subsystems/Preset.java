@@ -0,0 +1,11 @@
+package frc.robot.subsystems;
+
+/*
+ * The named positions the arm and head pivot can be sent to with goTo(). Each subsystem has its
+ * own angle for each one, see Constants.
+ */
+public enum Preset {
+    STOW,
+    FLOOR_PICKUP,
+    SCORE
+}
@@ -0,0 +1,107 @@
+package frc.robot.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.RobotBase;
+import frc.robot.Constants;
+
+/*
+ * AllocationProbe counts how many bytes of new objects a thread creates, using the JVM's own
+ * per-thread counter (ThreadMXBean.getCurrentThreadAllocatedBytes).
+ *
+ * Every object the robot loop creates is garbage the Java garbage collector has to clean up
+ * later, and on the roboRIO's small heap those clean ups show up as stutters while driving. The
+ * goal is for the control path (every subsystem command) to create nothing at all once it's
+ * warmed up.
+ *
+ * There are two ways to use it:
+ *   - StageTimer uses the static threadAllocatedBytes() on its own, so every stage that is timed
+ *     also reports how many bytes it allocated
+ *   - An AllocationProbe object, marked once per loop, reports the bytes allocated per whole loop
+ *     (including the CommandScheduler's own bookkeeping) under "Allocation/<name>"
+ *
+ * Reading the counter costs a little time, so it's only turned on in simulation, unless
+ * Constants.kAllocationProbeOnRobot says otherwise.
+ */
+public class AllocationProbe {
+    private static final com.sun.management.ThreadMXBean threads = findThreads();
+    private static final boolean enabled = threads != null
+        && (RobotBase.isSimulation() || Constants.kAllocationProbeOnRobot);
+
+    static {
+        if (enabled) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    private long lastMark = -1;
+    private long lastCycleBytes;
+    private long windowBytes;
+    private int cyclesUntilPublish;
+
+    private final DoublePublisher bytesPerCyclePublisher;
+
+    public AllocationProbe(String name) {
+        cyclesUntilPublish = Constants.kStageTimerPublishPeriod;
+
+        bytesPerCyclePublisher = NetworkTableInstance.getDefault().getTable("Allocation")
+            .getDoubleTopic(name + "/bytesPerCycle").publish();
+    }
+
+    /*
+     * Call this once per loop, always from the same thread. It measures everything that thread
+     * allocated since the last call
+     */
+    public void mark() {
+        if (!enabled) {
+            return;
+        }
+
+        long now = threads.getCurrentThreadAllocatedBytes();
+
+        if (lastMark >= 0) {
+            lastCycleBytes = now - lastMark;
+            windowBytes += lastCycleBytes;
+
+            if (--cyclesUntilPublish <= 0) {
+                bytesPerCyclePublisher.set((double) windowBytes / Constants.kStageTimerPublishPeriod);
+                windowBytes = 0;
+                cyclesUntilPublish = Constants.kStageTimerPublishPeriod;
+            }
+        }
+
+        lastMark = now;
+    }
+
+    /*
+     * Bytes allocated between the last two calls to mark()
+     */
+    public long getLastCycleBytes() {
+        return lastCycleBytes;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * The total bytes the calling thread has ever allocated, or 0 when the probe is turned off
+     */
+    public static long threadAllocatedBytes() {
+        return enabled ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean findThreads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+
+        return null;
+    }
+}
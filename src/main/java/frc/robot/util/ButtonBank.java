@@ -0,0 +1,129 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+/*
+ * ButtonBank runs commands when buttons on one joystick are pressed or released, like a Trigger
+ * does, but for every button on the joystick at once.
+ *
+ * Each Trigger asks about its own button every loop, so the cost of checking buttons grows with
+ * every binding we add. A ButtonBank instead looks at the whole button bitmask from its
+ * ControllerState once per loop (button 1 is the lowest bit), and finds every button that changed
+ * with one XOR against last loop's bitmask:
+ *
+ *   changed = buttons ^ previous   (1 wherever a button changed)
+ *   pressed = changed & buttons    (changed, and down now)
+ *   released = changed & ~buttons  (changed, and up now)
+ *
+ * Only the bindings for buttons that actually changed get looked at, so a loop where nothing
+ * changed costs the same no matter how many buttons and macros are bound.
+ *
+ * The bank is checked by the CommandScheduler at the same point in the loop as Triggers, and
+ * onTrue, whileTrue and onFalse mean the same things they do on a Trigger.
+ */
+public class ButtonBank {
+    private enum Kind {
+        ON_TRUE,
+        WHILE_TRUE,
+        ON_FALSE
+    }
+
+    private static class Binding {
+        final Kind kind;
+        final Command command;
+
+        Binding(Kind kind, Command command) {
+            this.kind = kind;
+            this.command = command;
+        }
+    }
+
+    private final ControllerState state;
+
+    // bindings[n] holds everything bound to button n + 1
+    private final Binding[][] bindings = new Binding[Integer.SIZE][];
+    private int boundButtons;
+    private int previous;
+
+    public ButtonBank(ControllerState state) {
+        this.state = state;
+
+        for (int i = 0; i < bindings.length; i++) {
+            bindings[i] = new Binding[0];
+        }
+
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(this::poll);
+    }
+
+    /*
+     * Starts command once, when the button is pressed
+     */
+    public ButtonBank onTrue(int button, Command command) {
+        return bind(button, Kind.ON_TRUE, command);
+    }
+
+    /*
+     * Starts command when the button is pressed, and cancels it when the button is released
+     */
+    public ButtonBank whileTrue(int button, Command command) {
+        return bind(button, Kind.WHILE_TRUE, command);
+    }
+
+    /*
+     * Starts command once, when the button is released
+     */
+    public ButtonBank onFalse(int button, Command command) {
+        return bind(button, Kind.ON_FALSE, command);
+    }
+
+    private ButtonBank bind(int button, Kind kind, Command command) {
+        int bit = button - 1;
+
+        Binding[] bound = Arrays.copyOf(bindings[bit], bindings[bit].length + 1);
+        bound[bound.length - 1] = new Binding(kind, command);
+        bindings[bit] = bound;
+
+        boundButtons |= 1 << bit;
+
+        return this;
+    }
+
+    private void poll() {
+        int buttons = state.getButtons();
+        int changed = (buttons ^ previous) & boundButtons;
+        previous = buttons;
+
+        // Visit each set bit of changed, lowest first, clearing it as we go
+        while (changed != 0) {
+            int bit = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+
+            boolean pressed = (buttons & (1 << bit)) != 0;
+
+            for (Binding binding : bindings[bit]) {
+                switch (binding.kind) {
+                    case ON_TRUE:
+                        if (pressed) {
+                            binding.command.schedule();
+                        }
+                        break;
+                    case WHILE_TRUE:
+                        if (pressed) {
+                            binding.command.schedule();
+                        } else {
+                            binding.command.cancel();
+                        }
+                        break;
+                    case ON_FALSE:
+                        if (!pressed) {
+                            binding.command.schedule();
+                        }
+                        break;
+                }
+            }
+        }
+    }
+}
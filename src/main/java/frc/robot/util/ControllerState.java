@@ -0,0 +1,100 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Joystick;
+
+/*
+ * ControllerState is a "snapshot" of one joystick, taken once at the start of every robot loop.
+ *
+ * Asking a Joystick for an axis or button goes all the way down into the driver station
+ * code every time you ask. If a dozen different lambdas each ask for their own value, that's
+ * a dozen trips, and the values don't even all come from the same moment in time.
+ *
+ * Instead, capture() copies every axis and the whole set of buttons into plain fields once
+ * per loop, and everything else reads from those fields. The methods here are named the same
+ * as the Joystick methods they replace, so driverState.getY() reads just like driver.getY().
+ */
+public class ControllerState {
+    private final int port;
+
+    private final int xChannel;
+    private final int yChannel;
+    private final int twistChannel;
+
+    private final double[] axes;
+    private int axisCount;
+
+    private int buttons;
+    private int previousButtons;
+
+    public ControllerState(Joystick joystick) {
+        port = joystick.getPort();
+
+        xChannel = joystick.getXChannel();
+        yChannel = joystick.getYChannel();
+        twistChannel = joystick.getTwistChannel();
+
+        axes = new double[DriverStation.kMaxJoystickAxes];
+    }
+
+    /*
+     * Reads the joystick from the driver station. Robot.robotPeriodic calls this (through
+     * RobotContainer) before the CommandScheduler runs, so every command and trigger in a
+     * loop sees the same values.
+     */
+    public void capture() {
+        previousButtons = buttons;
+        buttons = DriverStation.getStickButtons(port);
+
+        // Only ask for axes the joystick actually has, the rest stay at 0
+        int count = DriverStation.getStickAxisCount(port);
+        for (int i = 0; i < count; i++) {
+            axes[i] = DriverStation.getStickAxis(port, i);
+        }
+        for (int i = count; i < axisCount; i++) {
+            axes[i] = 0;
+        }
+        axisCount = count;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public double getX() {
+        return axes[xChannel];
+    }
+
+    public double getY() {
+        return axes[yChannel];
+    }
+
+    public double getTwist() {
+        return axes[twistChannel];
+    }
+
+    public double getRawAxis(int axis) {
+        return axes[axis];
+    }
+
+    /*
+     * Buttons are numbered starting at 1, just like on the Joystick class
+     */
+    public boolean getRawButton(int button) {
+        return (buttons & (1 << (button - 1))) != 0;
+    }
+
+    /*
+     * True only for the one loop where the button went from not pressed to pressed
+     */
+    public boolean getRawButtonPressed(int button) {
+        return (buttons & ~previousButtons & (1 << (button - 1))) != 0;
+    }
+
+    /*
+     * Every button in one int, button 1 is the lowest bit
+     */
+    public int getButtons() {
+        return buttons;
+    }
+}
@@ -0,0 +1,101 @@
+package frc.robot.util;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.RawLogEntry;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/*
+ * InputRecorder saves everything the drivers did, every loop, so a match can be played back
+ * later in simulation (see src/test/java/frc/robot/sim/InputReplay.java) and any problem from
+ * that match can be reproduced as many times as we want.
+ *
+ * Each loop becomes one small fixed-size record, written as a raw entry named kEntryName into
+ * the same log file as the TelemetryLog:
+ *
+ *   byte 0           robot mode, bit 0 = enabled, bit 1 = autonomous, bit 2 = test
+ *   then for the driver joystick, followed by the secondary joystick:
+ *     kAxes bytes    each axis, stored the way the driver station sends it (-128 to 127)
+ *     4 bytes        the button bitmask, button 1 is the lowest bit
+ *
+ * The driver station only ever sends axes as whole numbers between -128 and 127, so storing them
+ * as a byte loses nothing that came from a real joystick.
+ */
+public class InputRecorder {
+    public static final String kEntryName = "Inputs/Joysticks";
+    public static final int kAxes = 6;
+    public static final int kJoystickSize = kAxes + 4;
+    public static final int kRecordSize = 1 + 2 * kJoystickSize;
+
+    public static final int kEnabledBit = 1;
+    public static final int kAutonomousBit = 2;
+    public static final int kTestBit = 4;
+
+    private final RawLogEntry entry;
+    private final ControllerState driver;
+    private final ControllerState secondary;
+
+    private final byte[] record = new byte[kRecordSize];
+
+    public InputRecorder(DataLog log, ControllerState driver, ControllerState secondary) {
+        entry = new RawLogEntry(log, kEntryName);
+
+        this.driver = driver;
+        this.secondary = secondary;
+    }
+
+    /*
+     * Records this loop's inputs, call this right after the ControllerStates are captured
+     */
+    public void record() {
+        int mode = 0;
+        if (DriverStation.isEnabled()) {
+            mode |= kEnabledBit;
+        }
+        if (DriverStation.isAutonomous()) {
+            mode |= kAutonomousBit;
+        }
+        if (DriverStation.isTest()) {
+            mode |= kTestBit;
+        }
+
+        record[0] = (byte) mode;
+        writeJoystick(driver, 1);
+        writeJoystick(secondary, 1 + kJoystickSize);
+
+        entry.append(record, WPIUtilJNI.now());
+    }
+
+    private void writeJoystick(ControllerState state, int offset) {
+        for (int axis = 0; axis < kAxes; axis++) {
+            record[offset + axis] = encodeAxis(state.getRawAxis(axis));
+        }
+
+        int buttons = state.getButtons();
+        record[offset + kAxes] = (byte) (buttons >>> 24);
+        record[offset + kAxes + 1] = (byte) (buttons >>> 16);
+        record[offset + kAxes + 2] = (byte) (buttons >>> 8);
+        record[offset + kAxes + 3] = (byte) buttons;
+    }
+
+    /*
+     * The driver station divides negative axis values by 128 and positive ones by 127,
+     * these two undo and redo that
+     */
+    public static byte encodeAxis(double value) {
+        long raw = value < 0 ? Math.round(value * 128) : Math.round(value * 127);
+
+        return (byte) Math.max(-128, Math.min(127, raw));
+    }
+
+    public static double decodeAxis(byte raw) {
+        return raw < 0 ? raw / 128.0 : raw / 127.0;
+    }
+
+    public static int decodeButtons(byte[] record, int offset) {
+        return ((record[offset + kAxes] & 0xFF) << 24)
+            | ((record[offset + kAxes + 1] & 0xFF) << 16)
+            | ((record[offset + kAxes + 2] & 0xFF) << 8)
+            | (record[offset + kAxes + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,238 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants;
+
+/*
+ * LoopWatchdog keeps track of where the time in each robot loop goes, and when the loop is
+ * getting too close to its 20ms budget, it turns off the work we can live without.
+ *
+ * Where the time goes: the loop is split into stages by calling mark("Name") at the end of
+ * each one. The watchdog also hooks into the CommandScheduler, so the scheduler's run is split
+ * into the subsystem periodic methods, the button bindings, and every command that executed, each
+ * under the command's own name. If a loop goes over its period, the biggest stage is published
+ * under "LoopWatchdog" (lastOverrunStage and lastOverrunStageMs). The whole breakdown is sent to
+ * the Driver Station as a warning, but only for the first overrun and then at most once every
+ * kLoopWatchdogReportPeriodSeconds. An overrunning loop is already short on time, and putting the
+ * text together creates objects and writes to the console, so doing it every time would make
+ * things worse. WPILib's own loop overrun message already goes out every time, it just doesn't
+ * have the times for the individual commands.
+ *
+ * Load shedding: the work that can be skipped is listed in Sheddable, in the order it gets shed.
+ * Robot asks shouldRun() before each of those. Two things make it say no:
+ *
+ *   - The shed level. When a loop takes more than kLoopShedThreshold of the period, the level
+ *     goes up by one, and everything with an ordinal below the level is skipped. Once the loops
+ *     have stayed under kLoopRecoverThreshold for kLoopRecoverLoops in a row, the level comes down
+ *     by one. Every step up is a "shed" event and every step down is a "recover" event, and both
+ *     are counted and published.
+ *   - This loop. If the loop has already used kLoopShedThreshold of the period before the stage
+ *     even starts, it is skipped this time no matter what the level is.
+ *
+ * Control outputs are never in Sheddable. The inputs, the CommandScheduler and everything it
+ * runs always happen.
+ *
+ * Everything here runs on the robot loop's thread and creates no objects, except when the
+ * breakdown is sent.
+ */
+public class LoopWatchdog {
+    /*
+     * The work that may be skipped, first one listed is the first one shed
+     */
+    public enum Sheddable {
+        DASHBOARD,
+        CAMERA,
+        LOG
+    }
+
+    private static final int kShedLevels = Sheddable.values().length;
+
+    private final long periodNanos;
+    private final long shedNanos;
+    private final long recoverNanos;
+    private final long reportPeriodNanos;
+
+    // The stages of the current loop, in order
+    private final String[] stageNames = new String[Constants.kLoopWatchdogMaxStages];
+    private final long[] stageNanos = new long[Constants.kLoopWatchdogMaxStages];
+    private int stageCount;
+
+    private long loopStart;
+    private long lastMark;
+
+    private int shedLevel;
+    private int loopsUnderRecover;
+    private long shedEvents;
+    private long recoverEvents;
+    private long skippedStages;
+    private long overruns;
+    private int loopsUntilPublish;
+    private boolean reported;
+    private long lastReport;
+
+    private final IntegerPublisher shedLevelPublisher;
+    private final IntegerPublisher shedEventsPublisher;
+    private final IntegerPublisher recoverEventsPublisher;
+    private final IntegerPublisher skippedStagesPublisher;
+    private final IntegerPublisher overrunPublisher;
+    private final StringPublisher overrunStagePublisher;
+    private final DoublePublisher overrunStageMsPublisher;
+
+    public LoopWatchdog(double periodSeconds) {
+        periodNanos = (long) (periodSeconds * 1e9);
+        shedNanos = (long) (periodSeconds * Constants.kLoopShedThreshold * 1e9);
+        recoverNanos = (long) (periodSeconds * Constants.kLoopRecoverThreshold * 1e9);
+        reportPeriodNanos = (long) (Constants.kLoopWatchdogReportPeriodSeconds * 1e9);
+
+        loopsUntilPublish = Constants.kStageTimerPublishPeriod;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("LoopWatchdog");
+        shedLevelPublisher = table.getIntegerTopic("shedLevel").publish();
+        shedEventsPublisher = table.getIntegerTopic("shedEvents").publish();
+        recoverEventsPublisher = table.getIntegerTopic("recoverEvents").publish();
+        skippedStagesPublisher = table.getIntegerTopic("skippedStages").publish();
+        overrunPublisher = table.getIntegerTopic("overruns").publish();
+        overrunStagePublisher = table.getStringTopic("lastOverrunStage").publish();
+        overrunStageMsPublisher = table.getDoubleTopic("lastOverrunStageMs").publish();
+
+        /*
+         * The scheduler runs every subsystem's periodic, then polls the button loop, then executes
+         * the commands. Binding here, before any ButtonBank exists, puts this mark first in the
+         * button loop, so it closes out the subsystem periodics.
+         */
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(() -> mark("SubsystemPeriodic"));
+    }
+
+    /*
+     * Call once all the buttons are bound. It puts the "Buttons" mark after every binding, and
+     * starts marking each command as it executes.
+     */
+    public void attachAfterBindings() {
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(() -> mark("Buttons"));
+        CommandScheduler.getInstance().onCommandExecute(command -> mark(command.getName()));
+    }
+
+    public void startLoop() {
+        loopStart = System.nanoTime();
+        lastMark = loopStart;
+        stageCount = 0;
+    }
+
+    /*
+     * Ends the current stage, everything since the last mark is counted under name
+     */
+    public void mark(String name) {
+        long now = System.nanoTime();
+
+        if (stageCount < stageNames.length) {
+            stageNames[stageCount] = name;
+            stageNanos[stageCount] = now - lastMark;
+            stageCount++;
+        }
+
+        lastMark = now;
+    }
+
+    /*
+     * Whether the given work should run this loop, see the explanation at the top
+     */
+    public boolean shouldRun(Sheddable work) {
+        if (work.ordinal() < shedLevel || System.nanoTime() - loopStart > shedNanos) {
+            skippedStages++;
+            return false;
+        }
+
+        return true;
+    }
+
+    public void endLoop() {
+        mark("WPILib");
+
+        long loopNanos = lastMark - loopStart;
+        boolean levelChanged = false;
+
+        if (loopNanos > shedNanos) {
+            loopsUnderRecover = 0;
+
+            if (shedLevel < kShedLevels) {
+                shedLevel++;
+                shedEvents++;
+                levelChanged = true;
+            }
+        } else if (loopNanos < recoverNanos && shedLevel > 0) {
+            if (++loopsUnderRecover >= Constants.kLoopRecoverLoops) {
+                loopsUnderRecover = 0;
+                shedLevel--;
+                recoverEvents++;
+                levelChanged = true;
+            }
+        } else {
+            loopsUnderRecover = 0;
+        }
+
+        if (loopNanos > periodNanos) {
+            overruns++;
+            reportOverrun(loopNanos);
+        }
+
+        if (levelChanged || --loopsUntilPublish <= 0) {
+            loopsUntilPublish = Constants.kStageTimerPublishPeriod;
+            publish();
+        }
+    }
+
+    public int getShedLevel() {
+        return shedLevel;
+    }
+
+    public long getShedEvents() {
+        return shedEvents;
+    }
+
+    public long getRecoverEvents() {
+        return recoverEvents;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    private void publish() {
+        shedLevelPublisher.set(shedLevel);
+        shedEventsPublisher.set(shedEvents);
+        recoverEventsPublisher.set(recoverEvents);
+        skippedStagesPublisher.set(skippedStages);
+        overrunPublisher.set(overruns);
+    }
+
+    private void reportOverrun(long loopNanos) {
+        int worst = 0;
+        for (int i = 1; i < stageCount; i++) {
+            if (stageNanos[i] > stageNanos[worst]) {
+                worst = i;
+            }
+        }
+
+        overrunStagePublisher.set(stageNames[worst]);
+        overrunStageMsPublisher.set(stageNanos[worst] / 1e6);
+
+        if (reported && lastMark - lastReport < reportPeriodNanos) {
+            return;
+        }
+        reported = true;
+        lastReport = lastMark;
+
+        StringBuilder breakdown = new StringBuilder()
+            .append(String.format("Loop overrun: %.2f ms, shed level %d%n", loopNanos / 1e6, shedLevel));
+        for (int i = 0; i < stageCount; i++) {
+            breakdown.append(String.format("    %-32s %.3f ms%n", stageNames[i], stageNanos[i] / 1e6));
+        }
+        DriverStation.reportWarning(breakdown.toString(), false);
+    }
+}
@@ -0,0 +1,157 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/*
+ * MacroTimer measures how long each part ("phase") of a macro command takes, so we can see which
+ * mechanism is holding the whole macro up.
+ *
+ * A macro is built out of phases that run side by side (see RobotContainer.configureBindings).
+ * Wrap each phase's command with phase(), and the whole macro with macro():
+ *
+ *   MacroTimer timer = new MacroTimer("Stow");
+ *   Command stow = timer.macro(Commands.parallel(
+ *       timer.phase("Arm", arm.goTo(Preset.STOW).asProxy(), arm::atGoal),
+ *       timer.phase("LeadScrew", ...)));
+ *
+ * The phases' commands are proxies (asProxy()) so each mechanism is let go of as soon as its own
+ * phase's command ends, rather than when the whole macro does, see RobotContainer.intakeMacro.
+ *
+ * A phase counts as done the first time its "done" condition is true, or when its command ends if
+ * it doesn't have one. Mechanisms that hold their position afterwards (like the arm) keep running,
+ * only the timing stops. The macro is done once every phase is.
+ *
+ * Each time the macro is done, every phase's time is published to NetworkTables under
+ * "Macros/<macro>/<phase>Ms", and a breakdown is printed to the console with the slowest phase,
+ * the one to work on to make the macro faster, marked. Nothing is measured or printed if the
+ * macro is cancelled before it's done.
+ *
+ * Phases only look at the clock when they start and finish, and the breakdown is only put
+ * together once per macro, so timing costs nothing while the macro runs.
+ */
+public class MacroTimer {
+    private final String name;
+    private final NetworkTable table;
+    private final List<Phase> phases = new ArrayList<>();
+
+    private long macroStart;
+    private final DoublePublisher totalPublisher;
+
+    public MacroTimer(String name) {
+        this.name = name;
+        table = NetworkTableInstance.getDefault().getTable("Macros").getSubTable(name);
+        totalPublisher = table.getDoubleTopic("TotalMs").publish();
+    }
+
+    /*
+     * Times command as one phase, done the first time done returns true
+     */
+    public Command phase(String phaseName, Command command, BooleanSupplier done) {
+        Phase phase = new Phase(phaseName, command, done);
+        phases.add(phase);
+        return phase;
+    }
+
+    /*
+     * Times command as one phase, done when the command ends
+     */
+    public Command phase(String phaseName, Command command) {
+        return phase(phaseName, command, null);
+    }
+
+    /*
+     * Wraps the whole macro, so the clock starts when it does
+     */
+    public Command macro(Command command) {
+        return command.beforeStarting(() -> macroStart = System.nanoTime()).withName(name);
+    }
+
+    private void phaseDone() {
+        // An index instead of an iterator, this runs in the middle of a macro and shouldn't create anything
+        for (int i = 0; i < phases.size(); i++) {
+            if (phases.get(i).doneNanos == 0) {
+                return;
+            }
+        }
+
+        double totalMs = (System.nanoTime() - macroStart) / 1e6;
+        totalPublisher.set(totalMs);
+
+        Phase slowest = phases.get(0);
+        for (Phase phase : phases) {
+            if (phase.getMs() > slowest.getMs()) {
+                slowest = phase;
+            }
+        }
+
+        StringBuilder breakdown = new StringBuilder()
+            .append(String.format("Macro %s took %.0f ms%n", name, totalMs));
+        for (Phase phase : phases) {
+            phase.publisher.set(phase.getMs());
+            breakdown.append(String.format("    %-16s %6.0f ms%s%n", phase.name, phase.getMs(), phase == slowest ? "  <- slowest" : ""));
+        }
+        System.out.print(breakdown);
+    }
+
+    /*
+     * A phase wraps the command it times, so it runs exactly like the command would on its own,
+     * with the same requirements
+     */
+    private class Phase extends WrapperCommand {
+        private final String name;
+        private final BooleanSupplier done;
+        private final DoublePublisher publisher;
+
+        private long startNanos;
+        private long doneNanos;
+
+        Phase(String name, Command command, BooleanSupplier done) {
+            super(command);
+            this.name = name;
+            this.done = done;
+            publisher = table.getDoubleTopic(name + "Ms").publish();
+        }
+
+        @Override
+        public void initialize() {
+            startNanos = System.nanoTime();
+            doneNanos = 0;
+            super.initialize();
+        }
+
+        @Override
+        public void execute() {
+            super.execute();
+
+            if (doneNanos == 0 && done != null && done.getAsBoolean()) {
+                markDone();
+            }
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            super.end(interrupted);
+
+            if (doneNanos == 0 && !interrupted && done == null) {
+                markDone();
+            }
+        }
+
+        private void markDone() {
+            doneNanos = System.nanoTime();
+            phaseDone();
+        }
+
+        double getMs() {
+            return (doneNanos - startNanos) / 1e6;
+        }
+    }
+}
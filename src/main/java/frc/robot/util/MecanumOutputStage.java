@@ -0,0 +1,165 @@
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.SlewRateLimiter;
+import frc.robot.Constants;
+
+/*
+ * MecanumOutputStage turns "drive this way" (forward, strafe, rotate) into the four wheel
+ * outputs of a mecanum drivetrain. It replaces WPILib's MecanumDrive, and it creates no new
+ * objects while it runs: the four results are kept in plain double fields and read back
+ * with getFrontLeft() and friends.
+ *
+ * It uses the same directions as WPILib: forward is positive x, left is positive y, and
+ * counterclockwise is positive rotation.
+ *
+ * On top of what MecanumDrive does, it adds:
+ *
+ *   - Slew rate limiting on each axis. The joystick can go from 0 to full in one loop, but the
+ *     wheels can't, they just spin on the carpet. Limiting how fast each input can change
+ *     (in "full speeds per second", see Constants) gets the robot moving with less wheel slip.
+ *
+ *   - Field-oriented driving. Given the robot's heading from a gyro, forward on the joystick
+ *     means "away from the driver" no matter which way the robot is facing. Without a gyro
+ *     (the supplier is null) it always drives robot-oriented.
+ *
+ *   - Desaturation that keeps the direction of travel. If any wheel is asked for more than
+ *     full speed, all four are divided by the same amount. That keeps the ratio between the
+ *     wheels, which is what decides the direction, instead of clipping one wheel and sending
+ *     the robot off at an angle.
+ */
+public class MecanumOutputStage {
+    private final SlewRateLimiter forwardLimiter;
+    private final SlewRateLimiter strafeLimiter;
+    private final SlewRateLimiter rotationLimiter;
+
+    private final DoubleSupplier gyroAngleRadians;
+    private boolean fieldOriented;
+
+    private double frontLeft;
+    private double frontRight;
+    private double rearLeft;
+    private double rearRight;
+
+    /*
+     * gyroAngleRadians is the robot's heading, counterclockwise positive, or null if the robot
+     * has no gyro
+     */
+    public MecanumOutputStage(DoubleSupplier gyroAngleRadians) {
+        this.gyroAngleRadians = gyroAngleRadians;
+
+        forwardLimiter = new SlewRateLimiter(Constants.kDriveForwardSlewRate);
+        strafeLimiter = new SlewRateLimiter(Constants.kDriveStrafeSlewRate);
+        rotationLimiter = new SlewRateLimiter(Constants.kDriveRotationSlewRate);
+    }
+
+    /*
+     * Works out the four wheel outputs, read them afterwards with the getters below
+     */
+    public void calculate(double xSpeed, double ySpeed, double zRotation) {
+        xSpeed = MathUtil.clamp(MathUtil.applyDeadband(xSpeed, Constants.kDriveDeadband), -1, 1);
+        ySpeed = MathUtil.clamp(MathUtil.applyDeadband(ySpeed, Constants.kDriveDeadband), -1, 1);
+        zRotation = MathUtil.clamp(zRotation, -1, 1);
+
+        xSpeed = forwardLimiter.calculate(xSpeed);
+        ySpeed = strafeLimiter.calculate(ySpeed);
+        zRotation = rotationLimiter.calculate(zRotation);
+
+        // Turn the field-relative request into a robot-relative one by rotating it backwards by the heading
+        if (isFieldOriented()) {
+            double angle = gyroAngleRadians.getAsDouble();
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+
+            double robotX = xSpeed * cos + ySpeed * sin;
+            double robotY = -xSpeed * sin + ySpeed * cos;
+
+            xSpeed = robotX;
+            ySpeed = robotY;
+        }
+
+        mix(xSpeed, ySpeed, zRotation);
+    }
+
+    /*
+     * Like calculate(), but the inputs are used exactly as given: no deadband, no slew rate
+     * limiting and always robot-oriented. This is for autonomous profiles, which were already
+     * worked out ahead of time to be smooth (see auto/AutoProfile.java). The slew rate limiters
+     * are reset to these inputs, so when a driver takes over they ramp from where the profile
+     * left off.
+     */
+    public void calculateUnfiltered(double xSpeed, double ySpeed, double zRotation) {
+        xSpeed = MathUtil.clamp(xSpeed, -1, 1);
+        ySpeed = MathUtil.clamp(ySpeed, -1, 1);
+        zRotation = MathUtil.clamp(zRotation, -1, 1);
+
+        reset(xSpeed, ySpeed, zRotation);
+        mix(xSpeed, ySpeed, zRotation);
+    }
+
+    private void mix(double xSpeed, double ySpeed, double zRotation) {
+        double fl = xSpeed - ySpeed - zRotation;
+        double fr = xSpeed + ySpeed + zRotation;
+        double rl = xSpeed + ySpeed - zRotation;
+        double rr = xSpeed - ySpeed + zRotation;
+
+        double max = Math.max(Math.max(Math.abs(fl), Math.abs(fr)), Math.max(Math.abs(rl), Math.abs(rr)));
+        if (max > 1) {
+            fl /= max;
+            fr /= max;
+            rl /= max;
+            rr /= max;
+        }
+
+        frontLeft = fl;
+        frontRight = fr;
+        rearLeft = rl;
+        rearRight = rr;
+    }
+
+    /*
+     * Forgets the slew rate history, so the next calculate() starts from the given inputs
+     * instead of ramping up to them. Drivetrain resets to 0 while the robot is disabled.
+     */
+    public void reset(double xSpeed, double ySpeed, double zRotation) {
+        forwardLimiter.reset(xSpeed);
+        strafeLimiter.reset(ySpeed);
+        rotationLimiter.reset(zRotation);
+    }
+
+    public void setFieldOriented(boolean fieldOriented) {
+        this.fieldOriented = fieldOriented;
+    }
+
+    /*
+     * What was asked for with setFieldOriented, whether or not there's a gyro
+     */
+    public boolean isFieldOrientedRequested() {
+        return fieldOriented;
+    }
+
+    /*
+     * Field-oriented only actually happens when there's a gyro to read
+     */
+    public boolean isFieldOriented() {
+        return fieldOriented && gyroAngleRadians != null;
+    }
+
+    public double getFrontLeft() {
+        return frontLeft;
+    }
+
+    public double getFrontRight() {
+        return frontRight;
+    }
+
+    public double getRearLeft() {
+        return rearLeft;
+    }
+
+    public double getRearRight() {
+        return rearRight;
+    }
+}
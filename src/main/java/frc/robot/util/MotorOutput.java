@@ -0,0 +1,149 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.motorcontrol.PWMMotorController;
+import frc.robot.Constants;
+
+/*
+ * MotorOutput sits between a subsystem and its motor controller, and remembers the last value
+ * that was actually sent to the motor.
+ *
+ * Most of the time our mechanisms are sitting still, which means their stop() commands write 0
+ * to the motor every single loop. That's wasted work, the motor controller already has 0. So
+ * set() only sends a new value when it's different enough (more than kMotorOutputEpsilon) from
+ * the last one. When it skips a write, it still "feeds" the motor safety watchdog, so the
+ * motor controller doesn't think the code has stopped running.
+ *
+ * If the motor controller has motor safety turned on and its watchdog ran out (for example while
+ * the robot was disabled), the watchdog has already stopped the motor behind our back. set()
+ * checks for that with isAlive() and writes the value again instead of skipping it.
+ *
+ * While the robot is warming up (see RobotContainer.warmUp), every MotorOutput can be inhibited
+ * at once with setInhibited(true). Inhibited outputs run through the same code but never touch
+ * the motor or the remembered value.
+ *
+ * Every MotorOutput also has a PowerPriority. When the battery is sagging, the PowerArbiter
+ * (see PowerArbiter.java) scales down every output of a priority at once, through
+ * setPowerScale(). CRITICAL outputs (the drivetrain and the lead screw) are never scaled.
+ *
+ * Part of an output can be kept out of the scaling with set(value, unscaled). The arm and the
+ * head pivot use that for the output that holds them up against gravity: scaling that down
+ * wouldn't save much power, it would just let the joint fall.
+ *
+ * The number of skipped writes is published to NetworkTables under "MotorOutput/<name>".
+ */
+public class MotorOutput {
+    public enum PowerPriority {
+        CRITICAL,
+        MEDIUM,
+        LOW
+    }
+
+    private static volatile boolean inhibited;
+
+    /*
+     * One scale per PowerPriority, written by the PowerArbiter at the start of the scheduler's
+     * run and read by the commands after it, all on the robot loop's thread
+     */
+    private static final double[] powerScales = {1, 1, 1};
+
+    private final PWMMotorController motor;
+    private final int priority;
+
+    // volatile so other threads (like the telemetry log) can safely read it through get()
+    private volatile double lastValue;
+    private boolean lastValueValid;
+
+    private long skippedWrites;
+    private int setsUntilPublish;
+
+    private final IntegerPublisher skippedPublisher;
+
+    public MotorOutput(String name, PWMMotorController motor) {
+        this(name, motor, PowerPriority.CRITICAL);
+    }
+
+    public MotorOutput(String name, PWMMotorController motor, PowerPriority priority) {
+        this.motor = motor;
+        this.priority = priority.ordinal();
+
+        setsUntilPublish = Constants.kStageTimerPublishPeriod;
+
+        skippedPublisher = NetworkTableInstance.getDefault().getTable("MotorOutput")
+            .getIntegerTopic(name + "/skippedWrites").publish();
+    }
+
+    public void set(double value) {
+        set(value, 0);
+    }
+
+    /*
+     * Sends value, scaled by this output's PowerPriority, plus unscaled, which is never scaled
+     */
+    public void set(double value, double unscaled) {
+        if (inhibited) {
+            return;
+        }
+
+        value = value * powerScales[priority] + unscaled;
+
+        /*
+         * A change to exactly 0 is always written, so a mechanism that's told to stop really
+         * does stop, even if the last value was already inside the epsilon
+         */
+        boolean changed = value == 0
+            ? lastValue != 0
+            : Math.abs(value - lastValue) > Constants.kMotorOutputEpsilon;
+
+        if (lastValueValid && !changed && motor.isAlive()) {
+            motor.feed();
+            skippedWrites++;
+        } else {
+            motor.set(value);
+            lastValue = value;
+            lastValueValid = true;
+        }
+
+        if (--setsUntilPublish <= 0) {
+            setsUntilPublish = Constants.kStageTimerPublishPeriod;
+            skippedPublisher.set(skippedWrites);
+        }
+    }
+
+    /*
+     * Disables the motor output, and forgets the last value so the next set() always writes
+     */
+    public void stopMotor() {
+        motor.stopMotor();
+        lastValueValid = false;
+    }
+
+    /*
+     * The last value actually sent to the motor, after any power scaling
+     */
+    public double get() {
+        return lastValue;
+    }
+
+    public long getSkippedWrites() {
+        return skippedWrites;
+    }
+
+    /*
+     * Scales every output of the given priority, from 0 (off) to 1 (full). CRITICAL can't be scaled.
+     */
+    public static void setPowerScale(PowerPriority priority, double scale) {
+        if (priority != PowerPriority.CRITICAL) {
+            powerScales[priority.ordinal()] = scale;
+        }
+    }
+
+    public static void setInhibited(boolean inhibited) {
+        MotorOutput.inhibited = inhibited;
+    }
+
+    public static boolean isInhibited() {
+        return inhibited;
+    }
+}
@@ -0,0 +1,188 @@
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.AnalogPotentiometer;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+
+/*
+ * ProfiledJoint moves a motor that swings something around a pivot (like the arm, or the head on
+ * the end of it) to an angle, smoothly and quickly. The Arm and HeadPivot each have one.
+ *
+ * The angle comes from a potentiometer on the pivot. Angles are in radians, 0 is straight out
+ * level with the floor, and up is positive.
+ *
+ * Moving to an angle has three parts:
+ *
+ *   - A trapezoid motion profile. Instead of asking for the goal angle right away (which would
+ *     slam the motor to full power and overshoot), the profile works out a setpoint for every loop
+ *     that speeds up at a steady rate, cruises at the top speed, then slows down at a steady rate,
+ *     arriving at the goal with no speed left. Plotted, the speed looks like a trapezoid.
+ *
+ *   - Feedforward. ArmFeedforward works out the voltage the motor should need to follow the
+ *     setpoint: enough to hold the weight up against gravity (the most when the joint is level,
+ *     none when it points straight up), plus enough for the speed and acceleration asked for.
+ *
+ *   - Feedback. A PID controller (only the P part) adds a little more voltage in proportion to
+ *     how far the potentiometer says we are from the setpoint, to make up for what the
+ *     feedforward got wrong.
+ *
+ * Gravity pulls on the real angle from the floor. For the head, the potentiometer measures the
+ * angle from the arm, so gravityReference hands in the arm's angle to add on. For the arm it's null.
+ *
+ * The profile is worked out here instead of with WPILib's TrapezoidProfile, which hands back a
+ * new State object (and makes a few more inside) every time it's asked for the next setpoint.
+ * This runs every loop while a preset is held, so it keeps the setpoint in plain double fields
+ * and does the same math without creating anything. The constraints still come in as a
+ * TrapezoidProfile.Constraints, so they're written the same way as everywhere else.
+ *
+ * calculate() returns a motor output (the voltage divided by the battery voltage), ready to hand
+ * to a MotorOutput, for everything except the weight. The part that holds the joint up against
+ * gravity comes from getHoldOutput() instead, so it can be kept out of the PowerArbiter's scaling
+ * (see MotorOutput.set(value, unscaled)). Scaling that part down while the battery sags wouldn't
+ * save anything worth having, the joint would just drop.
+ */
+public class ProfiledJoint {
+    private final AnalogPotentiometer potentiometer;
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final ArmFeedforward feedforward;
+    private final PIDController feedback;
+    private final DoubleSupplier gravityReference;
+    private final double toleranceRadians;
+
+    private double setpointPosition;
+    private double setpointVelocity;
+    private double goalPosition;
+    private double holdOutput;
+
+    public ProfiledJoint(
+        AnalogPotentiometer potentiometer,
+        TrapezoidProfile.Constraints constraints,
+        ArmFeedforward feedforward,
+        double kP,
+        double toleranceRadians,
+        DoubleSupplier gravityReference
+    ) {
+        this.potentiometer = potentiometer;
+        this.maxVelocity = constraints.maxVelocity;
+        this.maxAcceleration = constraints.maxAcceleration;
+        this.feedforward = feedforward;
+        this.feedback = new PIDController(kP, 0, 0);
+        this.toleranceRadians = toleranceRadians;
+        this.gravityReference = gravityReference;
+    }
+
+    /*
+     * Starts a move to goalRadians from wherever the joint is now
+     */
+    public void start(double goalRadians) {
+        goalPosition = goalRadians;
+        setpointPosition = getAngle();
+        setpointVelocity = 0;
+        feedback.reset();
+    }
+
+    /*
+     * Steps the profile forward one loop and returns the motor output for it, leaving out the
+     * gravity part, see getHoldOutput()
+     */
+    public double calculate() {
+        double dt = TimedRobot.kDefaultPeriod;
+        double lastVelocity = setpointVelocity;
+
+        step(dt);
+
+        double acceleration = (setpointVelocity - lastVelocity) / dt;
+        double reference = gravityReference == null ? 0 : gravityReference.getAsDouble();
+        double gravityVolts = feedforward.kg * Math.cos(setpointPosition + reference);
+
+        double volts = feedforward.calculate(setpointPosition + reference, setpointVelocity, acceleration)
+            - gravityVolts
+            + feedback.calculate(getAngle(), setpointPosition);
+
+        double batteryVoltage = RobotController.getBatteryVoltage();
+        holdOutput = gravityVolts / batteryVoltage;
+
+        return volts / batteryVoltage;
+    }
+
+    /*
+     * The motor output that holds the joint up against gravity, from the last calculate()
+     */
+    public double getHoldOutput() {
+        return holdOutput;
+    }
+
+    /*
+     * Moves the setpoint dt seconds along the trapezoid from where it is now to the goal. This is
+     * the same math as TrapezoidProfile.calculate, for a goal with no speed left at the end.
+     *
+     * The math is done as if the goal is above the setpoint (direction is 1), and flipped back at
+     * the end if it's really below (direction is -1).
+     */
+    private void step(double dt) {
+        double direction = setpointPosition > goalPosition ? -1 : 1;
+        double position = setpointPosition * direction;
+        double velocity = Math.min(setpointVelocity * direction, maxVelocity);
+        double goal = goalPosition * direction;
+
+        // How long, and how far, it would have taken to get up to the speed we already have
+        double cutoffBegin = velocity / maxAcceleration;
+        double cutoffDistBegin = cutoffBegin * cutoffBegin * maxAcceleration / 2;
+
+        // The whole trapezoid, as if it had started from a standstill
+        double fullTrapezoidDist = cutoffDistBegin + (goal - position);
+        double accelerationTime = maxVelocity / maxAcceleration;
+        double fullSpeedDist = fullTrapezoidDist - accelerationTime * accelerationTime * maxAcceleration;
+
+        // Too short to reach top speed, so it's a triangle instead
+        if (fullSpeedDist < 0) {
+            accelerationTime = Math.sqrt(fullTrapezoidDist / maxAcceleration);
+            fullSpeedDist = 0;
+        }
+
+        double endAccel = accelerationTime - cutoffBegin;
+        double endFullSpeed = endAccel + fullSpeedDist / maxVelocity;
+        double endDecel = endFullSpeed + accelerationTime;
+
+        if (dt < endAccel) {
+            position += (velocity + dt * maxAcceleration / 2) * dt;
+            velocity += dt * maxAcceleration;
+        } else if (dt < endFullSpeed) {
+            position += (velocity + endAccel * maxAcceleration / 2) * endAccel + maxVelocity * (dt - endAccel);
+            velocity = maxVelocity;
+        } else if (dt <= endDecel) {
+            double timeLeft = endDecel - dt;
+            position = goal - (timeLeft * maxAcceleration / 2) * timeLeft;
+            velocity = timeLeft * maxAcceleration;
+        } else {
+            position = goal;
+            velocity = 0;
+        }
+
+        setpointPosition = position * direction;
+        setpointVelocity = velocity * direction;
+    }
+
+    /*
+     * Whether the profile has finished and the joint is within tolerance of the goal
+     */
+    public boolean atGoal() {
+        return setpointPosition == goalPosition
+            && setpointVelocity == 0
+            && Math.abs(getAngle() - goalPosition) < toleranceRadians;
+    }
+
+    public double getAngle() {
+        return Math.toRadians(potentiometer.get());
+    }
+
+    public double getGoal() {
+        return goalPosition;
+    }
+}
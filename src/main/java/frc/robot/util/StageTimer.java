@@ -0,0 +1,202 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.robot.Constants;
+
+/*
+ * StageTimer measures how long one "stage" of the robot loop takes, for example the whole
+ * CommandScheduler run, or the execute of a single subsystem's command.
+ *
+ * You wrap the code you want to measure with start() and stop(). Every sample is stored in a
+ * fixed-size ring buffer (an array that wraps around and overwrites the oldest sample), so
+ * the timer never creates new objects while the robot is running. Every so often the timer
+ * sorts a copy of the buffer and publishes the median (p50), the 99th percentile (p99), the
+ * slowest sample (max), and a count of how many samples went over the stage's budget to
+ * NetworkTables under "Timing/<name>".
+ *
+ * When the AllocationProbe is turned on (it is in simulation), start() and stop() also count the
+ * bytes of new objects created in between, published as "allocatedBytes". For every subsystem
+ * command that number should stop growing once the robot has warmed up.
+ *
+ * A StageTimer should only ever be used from one thread. resetAll() can be called from anywhere,
+ * it only asks each timer to reset, and the timer does it on its own thread the next time it
+ * records a sample.
+ */
+public class StageTimer {
+    private static int instances = 0;
+    private static final List<StageTimer> all = new ArrayList<>();
+
+    private final String name;
+
+    private final long budgetNanos;
+
+    private final long[] samples;
+    private final long[] sorted;
+
+    private volatile boolean resetRequested;
+
+    private int nextSample;
+    private int sampleCount;
+    private int samplesUntilPublish;
+
+    private long startNanos;
+    private long lastNanos;
+    private long overruns;
+
+    private long allocatedStart;
+    // volatile so the simulation can read it from another thread, see src/test/java/frc/robot/sim/MatchSimulationTest.java
+    private volatile long allocatedBytes;
+
+    private final DoublePublisher p50Publisher;
+    private final DoublePublisher p99Publisher;
+    private final DoublePublisher maxPublisher;
+    private final IntegerPublisher overrunPublisher;
+    private final IntegerPublisher allocatedPublisher;
+
+    /*
+     * name is what shows up in NetworkTables, budgetSeconds is how long this stage is allowed
+     * to take before a sample is counted as an overrun.
+     */
+    public StageTimer(String name, double budgetSeconds) {
+        this.name = name;
+        budgetNanos = (long) (budgetSeconds * 1e9);
+
+        samples = new long[Constants.kStageTimerSamples];
+        sorted = new long[Constants.kStageTimerSamples];
+
+        // Spread the timers out so they don't all sort and publish in the same loop
+        samplesUntilPublish = Constants.kStageTimerPublishPeriod
+            - (instances++ * 7) % Constants.kStageTimerPublishPeriod;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Timing").getSubTable(name);
+        p50Publisher = table.getDoubleTopic("p50Ms").publish();
+        p99Publisher = table.getDoubleTopic("p99Ms").publish();
+        maxPublisher = table.getDoubleTopic("maxMs").publish();
+        overrunPublisher = table.getIntegerTopic("overruns").publish();
+        allocatedPublisher = table.getIntegerTopic("allocatedBytes").publish();
+
+        all.add(this);
+    }
+
+    public void start() {
+        if (AllocationProbe.isEnabled()) {
+            allocatedStart = AllocationProbe.threadAllocatedBytes();
+        }
+
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = AllocationProbe.isEnabled() ? AllocationProbe.threadAllocatedBytes() - allocatedStart : 0;
+
+        // record() applies a pending reset, so add the bytes after it
+        record(nanos);
+        allocatedBytes += allocated;
+    }
+
+    /*
+     * record lets you add a sample you measured yourself, start() and stop() use it internally
+     */
+    public void record(long nanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            sampleCount = 0;
+            nextSample = 0;
+            overruns = 0;
+            allocatedBytes = 0;
+        }
+
+        lastNanos = nanos;
+
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % samples.length;
+
+        if (sampleCount < samples.length) {
+            sampleCount++;
+        }
+
+        if (nanos > budgetNanos) {
+            overruns++;
+        }
+
+        if (--samplesUntilPublish <= 0) {
+            samplesUntilPublish = Constants.kStageTimerPublishPeriod;
+            publish();
+        }
+    }
+
+    /*
+     * The duration of the most recent sample, in nanoseconds
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /*
+     * Throws away every sample, overrun and allocated byte counted so far, on every StageTimer.
+     * Used after warm-up, so the numbers only show what happened once the robot was ready.
+     *
+     * Some timers belong to a Notifier or another thread (like the lead screw fast loop), so
+     * clearing their counts from here would race with that thread. Instead each timer clears its
+     * own counts the next time it records a sample.
+     */
+    public static void resetAll() {
+        for (StageTimer timer : all) {
+            timer.resetRequested = true;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /*
+     * Total bytes allocated between start() and stop() so far, always 0 if the AllocationProbe is off
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /*
+     * Every StageTimer that has been created, in the order they were created
+     */
+    public static List<StageTimer> getAll() {
+        return Collections.unmodifiableList(all);
+    }
+
+    private void publish() {
+        int count = sampleCount;
+        if (count == 0) {
+            return;
+        }
+
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+
+        p50Publisher.set(percentile(.5, count) / 1e6);
+        p99Publisher.set(percentile(.99, count) / 1e6);
+        maxPublisher.set(sorted[count - 1] / 1e6);
+        overrunPublisher.set(overruns);
+        allocatedPublisher.set(allocatedBytes);
+    }
+
+    // Nearest rank percentile, sorted must already hold count sorted samples
+    private long percentile(double fraction, int count) {
+        int index = (int) Math.ceil(fraction * count) - 1;
+
+        return sorted[Math.max(index, 0)];
+    }
+}
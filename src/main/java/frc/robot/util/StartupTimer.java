@@ -0,0 +1,48 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/*
+ * StartupTimer measures how long each step of getting the robot code ready takes, like building
+ * the subsystems or setting up the dashboard.
+ *
+ * Call step("Name") right after each step finishes. The time since the last step (or since the
+ * StartupTimer was created) is printed to the console, so it shows up in the driver station log,
+ * and published to NetworkTables as "Startup/<Name>Ms".
+ *
+ * Steps that run on their own thread (like starting the camera) can measure themselves and hand
+ * the result to the static publish().
+ */
+public class StartupTimer {
+    private final long createdNanos;
+    private long lastStepNanos;
+
+    public StartupTimer() {
+        createdNanos = System.nanoTime();
+        lastStepNanos = createdNanos;
+    }
+
+    public void step(String name) {
+        long now = System.nanoTime();
+
+        publish(name, now - lastStepNanos);
+        lastStepNanos = now;
+    }
+
+    /*
+     * Publishes the time from when this StartupTimer was created until now under the given name
+     */
+    public void total(String name) {
+        publish(name, System.nanoTime() - createdNanos);
+    }
+
+    /*
+     * Safe to call from any thread
+     */
+    public static void publish(String name, long nanos) {
+        double ms = nanos / 1e6;
+
+        System.out.printf("Startup: %s took %.1f ms%n", name, ms);
+        NetworkTableInstance.getDefault().getTable("Startup").getEntry(name + "Ms").setDouble(ms);
+    }
+}
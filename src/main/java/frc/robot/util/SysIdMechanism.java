@@ -0,0 +1,70 @@
+package frc.robot.util;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/*
+ * Everything SysIdRecorder needs to know to characterize one mechanism: how to drive it, what to
+ * measure, and when to stop before it hurts itself. Each subsystem that can be characterized
+ * builds its own, see for example Arm.sysIdMechanism().
+ *
+ * position and velocity can be null when the robot has no sensor for them. A null velocity with
+ * a position is worked out from the change in position across kSysIdVelocityWindowSamples
+ * samples. With no position at all, only the voltage is recorded.
+ *
+ * distanceUnit is the unit position is measured in, named the way WPILib's units library names
+ * it ("Meter", "Radian"). It's saved with the log so the SysId tool knows what it's looking at.
+ *
+ * The suppliers are read from the SysIdRecorder's own thread, 1000 times a second, so they have
+ * to be safe to call from there. Reading a sensor (or a volatile field) is fine.
+ */
+public class SysIdMechanism {
+    public final String name;
+    public final Subsystem requirement;
+    public final double stepVolts;
+
+    // Called from the robot loop with the voltage to apply
+    public final DoubleConsumer setVoltage;
+
+    // Called from the recorder's thread
+    public final DoubleSupplier appliedVoltage;
+    public final DoubleSupplier position;
+    public final DoubleSupplier velocity;
+    public final String distanceUnit;
+
+    // Called from the robot loop, the test ends when the one for its direction is true
+    public final BooleanSupplier forwardLimit;
+    public final BooleanSupplier reverseLimit;
+
+    // Called once from the robot loop before each test, or null
+    public final Runnable prepare;
+
+    public SysIdMechanism(
+        String name,
+        Subsystem requirement,
+        double stepVolts,
+        DoubleConsumer setVoltage,
+        DoubleSupplier appliedVoltage,
+        DoubleSupplier position,
+        DoubleSupplier velocity,
+        String distanceUnit,
+        BooleanSupplier forwardLimit,
+        BooleanSupplier reverseLimit,
+        Runnable prepare
+    ) {
+        this.name = name;
+        this.requirement = requirement;
+        this.stepVolts = stepVolts;
+        this.setVoltage = setVoltage;
+        this.appliedVoltage = appliedVoltage;
+        this.position = position;
+        this.velocity = velocity;
+        this.distanceUnit = distanceUnit;
+        this.forwardLimit = forwardLimit;
+        this.reverseLimit = reverseLimit;
+        this.prepare = prepare;
+    }
+}
@@ -0,0 +1,257 @@
+package frc.robot.util;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+
+/*
+ * SysIdRecorder runs system identification ("SysId") tests on a mechanism and records what
+ * happened, so WPILib's SysId tool can work out the mechanism's feedforward gains (kS, kV, kA, and
+ * kG for the arm) from real measurements instead of guesses.
+ *
+ * There are four tests per mechanism, see Test:
+ *
+ *   - Quasistatic: the voltage goes up slowly (kSysIdRampVoltsPerSecond), so the mechanism is
+ *     never really accelerating. That shows how much voltage it takes to move at each speed.
+ *   - Dynamic: a sudden step to the mechanism's stepVolts. That shows how fast it accelerates.
+ *
+ * each run forward and in reverse. A test ends at its time limit, or when the mechanism reaches the
+ * limit for the direction it's going (see SysIdMechanism).
+ *
+ * The robot loop only runs every 20ms, which is too slow to see a mechanism accelerate. So while
+ * a test runs, a Notifier samples the voltage, position and velocity 1000 times a second
+ * (kSysIdSamplePeriodSeconds) on its own thread. The samples go into arrays that are created once,
+ * when the robot starts, so sampling creates no objects and doesn't log anything while the test
+ * runs.
+ *
+ * When a mechanism has no sensor for its velocity, the velocity is worked out from the change in
+ * position across kSysIdVelocityWindowSamples samples rather than from one sample to the next. At
+ * 1000 samples a second the angle hardly moves between two samples, so that change would be
+ * mostly potentiometer noise, divided by a millisecond.
+ *
+ * Once the test is over, another thread copies the samples into the robot's log file (the DataLog
+ * from TelemetryLog), with the same entry names and units WPILib's SysIdRoutineLog uses, so the
+ * SysId tool finds them: "sysid-test-state-<mechanism>" says which test was running (in the same
+ * words the tool uses), and "voltage-", "position-" and "velocity-<mechanism>-<mechanism>" hold
+ * the samples, the mechanism standing in for both the motor and the log name. A new test can't
+ * start until that's finished.
+ *
+ * The tests only run in test mode. In simulation they run against the physics models, see
+ * src/test/java/frc/robot/sim/SysIdSimulation.java.
+ */
+public class SysIdRecorder {
+    public enum Test {
+        QUASISTATIC_FORWARD("quasistatic-forward", true, 1),
+        QUASISTATIC_REVERSE("quasistatic-reverse", true, -1),
+        DYNAMIC_FORWARD("dynamic-forward", false, 1),
+        DYNAMIC_REVERSE("dynamic-reverse", false, -1);
+
+        private final String state;
+        private final boolean quasistatic;
+        private final double direction;
+
+        Test(String state, boolean quasistatic, double direction) {
+            this.state = state;
+            this.quasistatic = quasistatic;
+            this.direction = direction;
+        }
+
+        public String getState() {
+            return state;
+        }
+    }
+
+    private final DataLog log;
+    private final Notifier sampler;
+
+    // Filled in by the sampler thread, see the explanation at the top
+    private final long[] times;
+    private final double[] voltages;
+    private final double[] positions;
+    private final double[] velocities;
+    private volatile int count;
+
+    private volatile SysIdMechanism active;
+    private volatile boolean dumping;
+
+    public SysIdRecorder(DataLog log) {
+        this.log = log;
+
+        times = new long[Constants.kSysIdMaxSamples];
+        voltages = new double[Constants.kSysIdMaxSamples];
+        positions = new double[Constants.kSysIdMaxSamples];
+        velocities = new double[Constants.kSysIdMaxSamples];
+
+        sampler = new Notifier(this::sample);
+        sampler.setName("SysId");
+    }
+
+    /*
+     * Builds the command that runs one test on one mechanism
+     */
+    public Command command(SysIdMechanism mechanism, Test test) {
+        return new TestCommand(mechanism, test).withName("SysId " + mechanism.name + " " + test.getState());
+    }
+
+    private void sample() {
+        SysIdMechanism mechanism = active;
+        int i = count;
+        if (mechanism == null || i >= times.length) {
+            return;
+        }
+
+        long now = RobotController.getFPGATime();
+        times[i] = now;
+        voltages[i] = mechanism.appliedVoltage.getAsDouble();
+
+        if (mechanism.position != null) {
+            positions[i] = mechanism.position.getAsDouble();
+
+            int from = Math.max(i - Constants.kSysIdVelocityWindowSamples, 0);
+
+            if (mechanism.velocity != null) {
+                velocities[i] = mechanism.velocity.getAsDouble();
+            } else if (now > times[from]) {
+                velocities[i] = (positions[i] - positions[from]) / ((now - times[from]) / 1e6);
+            } else {
+                velocities[i] = 0;
+            }
+        }
+
+        count = i + 1;
+    }
+
+    /*
+     * Copies the samples into the log, on its own thread so the robot loop doesn't wait for it
+     */
+    private void dump(SysIdMechanism mechanism, Test test, int samples) {
+        String suffix = "-" + mechanism.name + "-" + mechanism.name;
+        StringLogEntry state = new StringLogEntry(log, "sysid-test-state-" + mechanism.name);
+        DoubleLogEntry voltage = new DoubleLogEntry(log, "voltage" + suffix, "Volt");
+        DoubleLogEntry position = mechanism.position != null
+            ? new DoubleLogEntry(log, "position" + suffix, mechanism.distanceUnit)
+            : null;
+        DoubleLogEntry velocity = mechanism.position != null
+            ? new DoubleLogEntry(log, "velocity" + suffix, mechanism.distanceUnit + " per Second")
+            : null;
+
+        if (samples > 0) {
+            state.append(test.getState(), times[0]);
+        }
+
+        for (int i = 0; i < samples; i++) {
+            voltage.append(voltages[i], times[i]);
+
+            if (position != null) {
+                position.append(positions[i], times[i]);
+                velocity.append(velocities[i], times[i]);
+            }
+        }
+
+        if (samples > 0) {
+            state.append("none", times[samples - 1] + 1);
+        }
+
+        System.out.printf("SysId: logged %d samples of %s %s%n", samples, mechanism.name, test.getState());
+        dumping = false;
+    }
+
+    public boolean isBusy() {
+        return active != null || dumping;
+    }
+
+    private class TestCommand extends Command {
+        private final SysIdMechanism mechanism;
+        private final Test test;
+        private final double timeout;
+
+        private boolean running;
+        private double startTime;
+
+        TestCommand(SysIdMechanism mechanism, Test test) {
+            this.mechanism = mechanism;
+            this.test = test;
+            this.timeout = test.quasistatic ? Constants.kSysIdQuasistaticSeconds : Constants.kSysIdDynamicSeconds;
+
+            addRequirements(mechanism.requirement);
+        }
+
+        @Override
+        public void initialize() {
+            running = false;
+
+            if (!DriverStation.isTest()) {
+                DriverStation.reportWarning("SysId tests only run in test mode", false);
+                return;
+            }
+
+            if (isBusy()) {
+                DriverStation.reportWarning("SysId is still running or saving the last test", false);
+                return;
+            }
+
+            if (mechanism.prepare != null) {
+                mechanism.prepare.run();
+            }
+
+            count = 0;
+            active = mechanism;
+            running = true;
+            startTime = Timer.getFPGATimestamp();
+            sampler.startPeriodic(Constants.kSysIdSamplePeriodSeconds);
+        }
+
+        @Override
+        public void execute() {
+            if (!running) {
+                return;
+            }
+
+            double volts = test.quasistatic
+                ? Constants.kSysIdRampVoltsPerSecond * (Timer.getFPGATimestamp() - startTime)
+                : mechanism.stepVolts;
+
+            mechanism.setVoltage.accept(test.direction * volts);
+        }
+
+        @Override
+        public boolean isFinished() {
+            if (!running) {
+                return true;
+            }
+
+            return Timer.getFPGATimestamp() - startTime > timeout
+                || count >= times.length
+                || (test.direction > 0 ? mechanism.forwardLimit : mechanism.reverseLimit).getAsBoolean();
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            if (!running) {
+                return;
+            }
+
+            mechanism.setVoltage.accept(0);
+
+            /*
+             * A sample that was already running when the sampler stopped can still finish, but it
+             * only ever writes past the end of what gets saved, so it can't change those samples
+             */
+            sampler.stop();
+            active = null;
+            int samples = count;
+            dumping = true;
+            running = false;
+
+            Thread thread = new Thread(() -> dump(mechanism, test, samples), "SysIdDump");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
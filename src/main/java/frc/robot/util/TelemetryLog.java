@@ -0,0 +1,195 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.util.datalog.BooleanLogEntry;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.util.datalog.IntegerLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotBase;
+import frc.robot.Constants;
+
+/*
+ * TelemetryLog records values from around the robot (motor outputs, joysticks, switches and so on)
+ * into a binary log file on the roboRIO, so we can look at exactly what happened after a match.
+ * The files can be opened with AdvantageScope or the WPILib DataLogTool.
+ *
+ * It's built on WPILib's DataLog, which is designed for this. Calling append on a log entry
+ * only copies the value into a buffer in memory, and a separate thread writes that buffer out
+ * to the file a few times a second, so the robot loop never waits on the disk.
+ *
+ * You add every value you want logged once, when the robot starts, with addDouble/addBoolean/
+ * addInteger and a lambda that reads the value. Then log() is called once per robot loop and
+ * records every value that changed since the last loop. Everything is set up ahead of time
+ * in fixed-size arrays, so log() never has to create new objects.
+ *
+ * log() is only allowed to take kTelemetryLogBudgetSeconds each loop. If it runs out of time
+ * it stops, and starts from where it left off on the next loop. How long it actually takes is
+ * published to NetworkTables under "Timing/TelemetryLog".
+ *
+ * On the robot the files go where DataLogManager always puts them (a USB stick if there is one,
+ * otherwise /home/lvuser/logs). In simulation, and in the tests, they go in
+ * kSimulationLogDirectory inside the build folder, instead of a "logs" folder in the project that
+ * would end up being committed.
+ */
+public class TelemetryLog {
+    /*
+     * A Channel is one value being logged: where it comes from, and the log entry it goes to
+     */
+    private abstract static class Channel {
+        abstract void append(long timestamp);
+    }
+
+    private static class DoubleChannel extends Channel {
+        private final DoubleSupplier source;
+        private final DoubleLogEntry entry;
+        private double last;
+        private boolean written;
+
+        DoubleChannel(DataLog log, String name, DoubleSupplier source) {
+            this.source = source;
+            entry = new DoubleLogEntry(log, name);
+        }
+
+        @Override
+        void append(long timestamp) {
+            double value = source.getAsDouble();
+
+            if (!written || value != last) {
+                entry.append(value, timestamp);
+                last = value;
+                written = true;
+            }
+        }
+    }
+
+    private static class BooleanChannel extends Channel {
+        private final BooleanSupplier source;
+        private final BooleanLogEntry entry;
+        private boolean last;
+        private boolean written;
+
+        BooleanChannel(DataLog log, String name, BooleanSupplier source) {
+            this.source = source;
+            entry = new BooleanLogEntry(log, name);
+        }
+
+        @Override
+        void append(long timestamp) {
+            boolean value = source.getAsBoolean();
+
+            if (!written || value != last) {
+                entry.append(value, timestamp);
+                last = value;
+                written = true;
+            }
+        }
+    }
+
+    private static class IntegerChannel extends Channel {
+        private final LongSupplier source;
+        private final IntegerLogEntry entry;
+        private long last;
+        private boolean written;
+
+        IntegerChannel(DataLog log, String name, LongSupplier source) {
+            this.source = source;
+            entry = new IntegerLogEntry(log, name);
+        }
+
+        @Override
+        void append(long timestamp) {
+            long value = source.getAsLong();
+
+            if (!written || value != last) {
+                entry.append(value, timestamp);
+                last = value;
+                written = true;
+            }
+        }
+    }
+
+    // How many channels get logged between checks of the time budget
+    private static final int kChannelsPerBudgetCheck = 4;
+
+    private final DataLog log;
+
+    private final Channel[] channels;
+    private int channelCount;
+    private int nextChannel;
+
+    private final long budgetNanos;
+    private final StageTimer logTimer;
+
+    public TelemetryLog() {
+        if (RobotBase.isSimulation()) {
+            new File(Constants.kSimulationLogDirectory).mkdirs();
+            DataLogManager.start(Constants.kSimulationLogDirectory);
+        } else {
+            DataLogManager.start();
+        }
+        // Mirroring everything in NetworkTables into the log would cost more than all of our own values combined
+        DataLogManager.logNetworkTables(false);
+
+        log = DataLogManager.getLog();
+
+        channels = new Channel[Constants.kTelemetryLogMaxChannels];
+
+        budgetNanos = (long) (Constants.kTelemetryLogBudgetSeconds * 1e9);
+        logTimer = new StageTimer("TelemetryLog", Constants.kTelemetryLogBudgetSeconds);
+    }
+
+    public void addDouble(String name, DoubleSupplier source) {
+        add(new DoubleChannel(log, name, source));
+    }
+
+    public void addBoolean(String name, BooleanSupplier source) {
+        add(new BooleanChannel(log, name, source));
+    }
+
+    public void addInteger(String name, LongSupplier source) {
+        add(new IntegerChannel(log, name, source));
+    }
+
+    private void add(Channel channel) {
+        if (channelCount == channels.length) {
+            throw new IllegalStateException("TelemetryLog is full, raise Constants.kTelemetryLogMaxChannels");
+        }
+
+        channels[channelCount++] = channel;
+    }
+
+    /*
+     * Records every channel that changed, starting from wherever the last call ran out of time
+     */
+    public void log() {
+        logTimer.start();
+
+        long start = System.nanoTime();
+        long timestamp = WPIUtilJNI.now();
+
+        for (int logged = 0; logged < channelCount; logged++) {
+            if (logged % kChannelsPerBudgetCheck == 0 && logged > 0
+                && System.nanoTime() - start > budgetNanos) {
+                break;
+            }
+
+            channels[nextChannel].append(timestamp);
+            nextChannel = (nextChannel + 1) % channelCount;
+        }
+
+        logTimer.stop();
+    }
+
+    /*
+     * The underlying DataLog, for anything that wants to write its own entries into the same file
+     */
+    public DataLog getDataLog() {
+        return log;
+    }
+}
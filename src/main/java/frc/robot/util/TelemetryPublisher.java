@@ -0,0 +1,188 @@
+package frc.robot.util;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import frc.robot.Constants;
+
+/*
+ * TelemetryPublisher sends values to the dashboard through NetworkTables, while keeping the cost
+ * to the robot loop and the network as low as it can.
+ *
+ * When you give Shuffleboard a lambda (like debugTab.addBoolean("...", leadScrew::getUpSwitchValue)),
+ * it calls that lambda and sends the result every single loop, whether it changed or not. Here,
+ * every value ("topic") is only sent when it actually changes, and at most once every
+ * minPeriodSeconds, no matter how often it changes.
+ *
+ * On top of that, publish() only gets kTelemetryPublishBudgetSeconds each loop. HIGH priority
+ * topics are always checked, LOW priority topics are checked one after another until the time
+ * runs out, and the rest wait for the next loop. So adding more diagnostics never makes the loop
+ * slower, the diagnostics just update a little less often.
+ *
+ * Topics can be added by name (they go in the table given to the constructor), or by handing
+ * in a publisher you already have. For a Shuffleboard widget, publish to the widget entry's topic
+ * (see RobotContainer.configureShuffleboard), so the widget keeps its position and size on the
+ * tab. The publishers are typed (BooleanPublisher, DoublePublisher), so a value goes straight out
+ * without being wrapped to say what type it is.
+ */
+public class TelemetryPublisher {
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private abstract static class Topic {
+        final long minPeriodNanos;
+        long lastPublishNanos;
+        boolean published;
+
+        Topic(double minPeriodSeconds) {
+            minPeriodNanos = (long) (minPeriodSeconds * 1e9);
+        }
+
+        void update(long now) {
+            if (published && now - lastPublishNanos < minPeriodNanos) {
+                return;
+            }
+
+            if (publishIfChanged()) {
+                lastPublishNanos = now;
+                published = true;
+            }
+        }
+
+        abstract boolean publishIfChanged();
+    }
+
+    private static class BooleanValue extends Topic {
+        private final BooleanPublisher publisher;
+        private final BooleanSupplier source;
+        private boolean last;
+
+        BooleanValue(BooleanPublisher publisher, double minPeriodSeconds, BooleanSupplier source) {
+            super(minPeriodSeconds);
+            this.publisher = publisher;
+            this.source = source;
+        }
+
+        @Override
+        boolean publishIfChanged() {
+            boolean value = source.getAsBoolean();
+
+            if (published && value == last) {
+                return false;
+            }
+
+            publisher.set(value);
+            last = value;
+            return true;
+        }
+    }
+
+    private static class DoubleValue extends Topic {
+        private final DoublePublisher publisher;
+        private final DoubleSupplier source;
+        private double last;
+
+        DoubleValue(DoublePublisher publisher, double minPeriodSeconds, DoubleSupplier source) {
+            super(minPeriodSeconds);
+            this.publisher = publisher;
+            this.source = source;
+        }
+
+        @Override
+        boolean publishIfChanged() {
+            double value = source.getAsDouble();
+
+            if (published && value == last) {
+                return false;
+            }
+
+            publisher.set(value);
+            last = value;
+            return true;
+        }
+    }
+
+    private final NetworkTable table;
+
+    private final Topic[] highPriority;
+    private int highPriorityCount;
+
+    private final Topic[] lowPriority;
+    private int lowPriorityCount;
+    private int nextLowPriority;
+
+    private final long budgetNanos;
+    private final StageTimer publishTimer;
+
+    public TelemetryPublisher(String name, NetworkTable table) {
+        this.table = table;
+
+        highPriority = new Topic[Constants.kTelemetryPublisherMaxTopics];
+        lowPriority = new Topic[Constants.kTelemetryPublisherMaxTopics];
+
+        budgetNanos = (long) (Constants.kTelemetryPublishBudgetSeconds * 1e9);
+        publishTimer = new StageTimer(name, Constants.kTelemetryPublishBudgetSeconds);
+    }
+
+    public void addBoolean(String name, Priority priority, double minPeriodSeconds, BooleanSupplier source) {
+        addBoolean(table.getBooleanTopic(name).publish(), priority, minPeriodSeconds, source);
+    }
+
+    public void addBoolean(BooleanPublisher publisher, Priority priority, double minPeriodSeconds, BooleanSupplier source) {
+        add(new BooleanValue(publisher, minPeriodSeconds, source), priority);
+    }
+
+    public void addDouble(String name, Priority priority, double minPeriodSeconds, DoubleSupplier source) {
+        addDouble(table.getDoubleTopic(name).publish(), priority, minPeriodSeconds, source);
+    }
+
+    public void addDouble(DoublePublisher publisher, Priority priority, double minPeriodSeconds, DoubleSupplier source) {
+        add(new DoubleValue(publisher, minPeriodSeconds, source), priority);
+    }
+
+    private void add(Topic topic, Priority priority) {
+        if (priority == Priority.HIGH) {
+            checkRoom(highPriorityCount, highPriority);
+            highPriority[highPriorityCount++] = topic;
+        } else {
+            checkRoom(lowPriorityCount, lowPriority);
+            lowPriority[lowPriorityCount++] = topic;
+        }
+    }
+
+    private static void checkRoom(int count, Topic[] topics) {
+        if (count == topics.length) {
+            throw new IllegalStateException("TelemetryPublisher is full, raise Constants.kTelemetryPublisherMaxTopics");
+        }
+    }
+
+    /*
+     * Called once per robot loop
+     */
+    public void publish() {
+        publishTimer.start();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < highPriorityCount; i++) {
+            highPriority[i].update(start);
+        }
+
+        for (int checked = 0; checked < lowPriorityCount; checked++) {
+            long now = System.nanoTime();
+            if (now - start > budgetNanos) {
+                break;
+            }
+
+            lowPriority[nextLowPriority].update(now);
+            nextLowPriority = (nextLowPriority + 1) % lowPriorityCount;
+        }
+
+        publishTimer.stop();
+    }
+}
@@ -0,0 +1,154 @@
+package frc.robot.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.robot.Constants;
+
+/*
+ * TunableNumber is a number that can be changed from the dashboard while the robot is running,
+ * without redeploying the code.
+ *
+ * Each one shows up in NetworkTables under "Tuning/<key>". Change it there (for example, in
+ * Shuffleboard or Glass) and the robot picks up the new value right away.
+ *
+ * Reading it with get() is as cheap as reading a constant. It doesn't ask NetworkTables for the
+ * value every time, it reads a plain double field. NetworkTables calls us back (on its own thread)
+ * only when the value actually changes, and that's the only time the field is updated. The field
+ * is volatile so the robot loop sees the new value on its next read.
+ *
+ * Every change is also saved to "tuning.properties" in the deploy directory, and that file is read
+ * back when the robot code starts, so tuned values survive a reboot. The listener doesn't write the
+ * file itself, it only marks it as out of date. A Notifier checks every kTuningSavePeriodSeconds
+ * and writes it if anything changed, so dragging a slider on the dashboard (which sends a stream of
+ * changes) means one write every few seconds, not one per change, and none of it holds up the
+ * NetworkTables thread. The file is written under another name first and then renamed over the old
+ * one, so a reboot in the middle of a write leaves the old file, not half of a new one. In simulation the deploy
+ * directory is src/main/deploy, so tuning in the simulator writes straight into the project. On the
+ * robot it is /home/lvuser/deploy, and the next deploy copies src/main/deploy over it, so copy the
+ * robot's tuning.properties back into src/main/deploy once you're happy with the values.
+ *
+ * Once a value is final, it's best to move it into Constants (see Tuning.java for where the
+ * defaults come from).
+ */
+public class TunableNumber {
+    private static final String kTableName = "Tuning";
+    private static final String kFileName = "tuning.properties";
+
+    private static final List<TunableNumber> all = new ArrayList<>();
+    private static Properties saved;
+    private static Notifier saver;
+    private static volatile boolean dirty;
+
+    private final String key;
+    private final DoubleEntry entry;
+    private volatile double value;
+
+    public TunableNumber(String key, double defaultValue) {
+        this.key = key;
+
+        synchronized (TunableNumber.class) {
+            if (saved == null) {
+                saved = load();
+
+                saver = new Notifier(TunableNumber::saveIfDirty);
+                saver.setName("Tuning");
+                saver.startPeriodic(Constants.kTuningSavePeriodSeconds);
+            }
+
+            value = defaultValue;
+            String savedValue = saved.getProperty(key);
+            if (savedValue != null) {
+                try {
+                    value = Double.parseDouble(savedValue);
+                } catch (NumberFormatException e) {
+                    DriverStation.reportWarning("Ignoring bad tuning value " + key + "=" + savedValue, false);
+                }
+            }
+
+            all.add(this);
+        }
+
+        NetworkTableInstance nt = NetworkTableInstance.getDefault();
+        entry = nt.getTable(kTableName).getDoubleTopic(key).getEntry(value);
+        entry.set(value);
+
+        nt.addListener(entry, EnumSet.of(NetworkTableEvent.Kind.kValueRemote), event -> {
+            double newValue = event.valueData.value.getDouble();
+            if (newValue != value) {
+                value = newValue;
+                dirty = true;
+            }
+        });
+    }
+
+    public double get() {
+        return value;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    private static File file() {
+        return new File(Filesystem.getDeployDirectory(), kFileName);
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        File file = file();
+
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                DriverStation.reportWarning("Could not read " + file + ": " + e.getMessage(), false);
+            }
+        }
+
+        return properties;
+    }
+
+    /*
+     * Writes every tunable's current value if any of them changed since the last write, called from
+     * the saver Notifier's thread. dirty is cleared before the values are read, so a change that comes
+     * in while the file is being written is written again next time.
+     */
+    private static synchronized void saveIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+
+        for (TunableNumber tunable : all) {
+            saved.setProperty(tunable.key, Double.toString(tunable.value));
+        }
+
+        File file = file();
+        File temp = new File(file.getParentFile(), kFileName + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                saved.store(out, "Values tuned from the dashboard, see TunableNumber.java");
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Could not write " + file + ": " + e.getMessage(), false);
+        }
+    }
+}
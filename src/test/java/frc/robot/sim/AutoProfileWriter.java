@@ -0,0 +1,92 @@
+package frc.robot.sim;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import frc.robot.auto.AutoProfile;
+import frc.robot.auto.AutoRoutines;
+
+/*
+ * AutoProfileWriter turns a spreadsheet of drivetrain outputs into an autonomous profile file
+ * (see auto/AutoProfile.java for the layout). It runs on your computer, not on the robot, so it
+ * lives with the other simulation tools and isn't part of the code that's deployed.
+ *
+ * Run it with "./gradlew writeAutoProfile -Pcsv=<file.csv>". The profile is written next to the
+ * other profiles in src/main/deploy/auto, named after the .csv file, and is picked up by the
+ * chooser on the next deploy.
+ *
+ * Each line of the .csv is one sample: "forward,strafe,rotation", each from -1 to 1, the same
+ * directions as the driver's joystick after RobotContainer flips them (forward, left and
+ * counterclockwise are positive). Lines starting with # are skipped. Two optional lines set the
+ * timing and voltage the outputs were worked out for:
+ *
+ *   #period 0.02
+ *   #voltage 12
+ *
+ * A good profile starts and ends at 0 and ramps between values, there's no slew rate limiting
+ * during playback.
+ */
+public final class AutoProfileWriter {
+    private AutoProfileWriter() {}
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: AutoProfileWriter <file.csv> [output folder]");
+            System.exit(2);
+        }
+
+        File csv = new File(args[0]);
+        File folder = new File(args.length > 1 ? args[1] : "src/main/deploy/auto");
+
+        double period = .02;
+        double voltage = 12;
+        List<double[]> samples = new ArrayList<>();
+
+        for (String line : Files.readAllLines(csv.toPath())) {
+            line = line.trim();
+            if (line.startsWith("#period")) {
+                period = Double.parseDouble(line.substring(7).trim());
+            } else if (line.startsWith("#voltage")) {
+                voltage = Double.parseDouble(line.substring(8).trim());
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                String[] parts = line.split(",");
+                samples.add(new double[] {
+                    Double.parseDouble(parts[0].trim()),
+                    Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim())
+                });
+            }
+        }
+
+        if (samples.size() < 2) {
+            System.err.println("A profile needs at least two samples");
+            System.exit(1);
+        }
+
+        String name = csv.getName().replaceFirst("\\.csv$", "");
+        File output = new File(folder, name + AutoRoutines.kProfileExtension);
+        folder.mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(output))) {
+            out.writeInt(AutoProfile.kMagic);
+            out.writeShort(AutoProfile.kVersion);
+            out.writeShort(AutoProfile.kChannels);
+            out.writeInt((int) Math.round(period * 1e6));
+            out.writeFloat((float) voltage);
+            out.writeInt(samples.size());
+
+            for (double[] sample : samples) {
+                for (double value : sample) {
+                    out.writeShort((int) Math.round(Math.max(-1, Math.min(1, value)) * 32767));
+                }
+            }
+        }
+
+        System.out.printf("Wrote %s: %d samples, %.2f s%n", output, samples.size(), (samples.size() - 1) * period);
+    }
+}
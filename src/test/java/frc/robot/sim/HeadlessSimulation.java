@@ -0,0 +1,60 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.Constants;
+import frc.robot.RobotContainer;
+
+/*
+ * HeadlessSimulation drives the robot around in simulation, with no window and no driver
+ * station, as fast as the computer can go. Run it with "./gradlew simulateHeadless", and add
+ * -PsimSeconds=<seconds> to change how long the scenario runs (a match is about 150 seconds).
+ *
+ * The scenario is simple: one second disabled, then teleop with the driver slowly weaving
+ * forward while the operator runs the lead screw up and down, and the rollers in. At the end
+ * it prints how long the simulation took compared to how long it would have taken for real,
+ * and where the drivetrain and lead screw models ended up.
+ */
+public final class HeadlessSimulation {
+    private HeadlessSimulation() {}
+
+    public static void main(String... args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 150;
+
+        SimulatedRobot robot = SimHarness.startRobot();
+        RobotContainer container = robot.getRobotContainer();
+
+        int cycles = (int) Math.round(seconds / robot.getPeriod());
+        int disabledCycles = (int) Math.round(1 / robot.getPeriod());
+
+        long startNanos = System.nanoTime();
+
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            double t = cycle * robot.getPeriod();
+
+            SimHarness.setMode(cycle >= disabledCycles, false);
+
+            DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 1, -.5);
+            DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 0, .3 * Math.sin(t / 2));
+
+            // Lead screw up for 4 seconds, then down for 4 seconds, and repeat
+            boolean up = (t % 8) < 4;
+            DriverStationSim.setJoystickButton(Constants.kSecondaryUSB, Constants.kLeadScrewUpButton, up);
+            DriverStationSim.setJoystickButton(Constants.kSecondaryUSB, Constants.kLeadScrewDownButton, !up);
+            DriverStationSim.setJoystickButton(Constants.kSecondaryUSB, Constants.kHeadRollersInButton, true);
+
+            SimHarness.cycle(robot);
+        }
+
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+        Pose2d pose = container.getDrivetrain().getSimulation().getPose();
+
+        System.out.printf("Simulated %.1f s in %.2f s of wall time (%.0fx real time)%n",
+            seconds, wallSeconds, seconds / wallSeconds);
+        System.out.printf("Drivetrain ended at %s%n", pose);
+        System.out.printf("Lead screw ended at %.3f m%n", container.getLeadScrew().getSimulation().getPosition());
+
+        robot.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,158 @@
+package frc.robot.sim;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.PWMSim;
+import frc.robot.Constants;
+import frc.robot.util.InputRecorder;
+
+/*
+ * InputReplay plays a match recorded by InputRecorder back through the simulated driver station,
+ * into a fresh simulated robot, one recorded loop per simulated loop.
+ *
+ * Run it with "./gradlew replayInputs -Plog=<path to .wpilog>", and optionally -Ptrace=<file.csv>
+ * to save every motor output from every loop.
+ *
+ * Time only moves when the harness steps it (see SimHarness), so the same recording produces the
+ * same motor outputs every time. At the end it prints a checksum of all the motor outputs, so two
+ * runs (or two versions of the code) can be compared at a glance, plus how much CPU time the
+ * robot loop took. That turns one bad match into a test we can run again and again.
+ */
+public final class InputReplay {
+    private static final int[] kPWMChannels = {
+        Constants.kFrontLeftPWMID,
+        Constants.kFrontRightPWMID,
+        Constants.kRearLeftPWMID,
+        Constants.kRearRightPWMID,
+        Constants.kLeadScrewPWMID,
+        Constants.kPickupHeadPWMID,
+        Constants.kPickupArmPWMID,
+        Constants.kPickupAnglePWMID
+    };
+
+    private InputReplay() {}
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: InputReplay <log.wpilog> [trace.csv]");
+            System.exit(2);
+        }
+
+        List<byte[]> records = readRecords(args[0]);
+        if (records.isEmpty()) {
+            System.err.println("No " + InputRecorder.kEntryName + " records in " + args[0]);
+            System.exit(1);
+        }
+
+        PrintWriter trace = args.length > 1 ? new PrintWriter(new FileWriter(args[1])) : null;
+
+        SimulatedRobot robot = SimHarness.startRobot();
+
+        PWMSim[] outputs = new PWMSim[kPWMChannels.length];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new PWMSim(kPWMChannels[i]);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long[] cpuNanos = new long[records.size()];
+        CRC32 checksum = new CRC32();
+
+        for (int cycle = 0; cycle < records.size(); cycle++) {
+            apply(records.get(cycle));
+
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            SimHarness.cycle(robot);
+            cpuNanos[cycle] = threads.getCurrentThreadCpuTime() - cpuStart;
+
+            StringBuilder line = new StringBuilder().append(cycle);
+            for (PWMSim output : outputs) {
+                double speed = output.getSpeed();
+                updateChecksum(checksum, Double.doubleToLongBits(speed));
+                line.append(',').append(speed);
+            }
+
+            if (trace != null) {
+                trace.println(line);
+            }
+        }
+
+        if (trace != null) {
+            trace.close();
+        }
+
+        long[] sorted = cpuNanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(cpuNanos).average().orElse(0);
+
+        System.out.printf("Replayed %d loops%n", records.size());
+        System.out.printf("Motor output checksum: %08x%n", checksum.getValue());
+        System.out.printf("CPU time per loop: mean %.1f us, p99 %.1f us, max %.1f us%n",
+            mean / 1e3,
+            sorted[(int) Math.ceil(.99 * sorted.length) - 1] / 1e3,
+            sorted[sorted.length - 1] / 1e3);
+
+        robot.close();
+        System.exit(0);
+    }
+
+    private static List<byte[]> readRecords(String path) throws IOException {
+        DataLogReader reader = new DataLogReader(path);
+        if (!reader.isValid()) {
+            throw new IOException(path + " is not a valid data log");
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        int entry = -1;
+
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                if (start.name.equals(InputRecorder.kEntryName)) {
+                    entry = start.entry;
+                }
+            } else if (!record.isControl() && record.getEntry() == entry) {
+                byte[] raw = record.getRaw();
+                if (raw.length == InputRecorder.kRecordSize) {
+                    records.add(raw);
+                }
+            }
+        }
+
+        return records;
+    }
+
+    private static void apply(byte[] record) {
+        int mode = record[0];
+        DriverStationSim.setEnabled((mode & InputRecorder.kEnabledBit) != 0);
+        DriverStationSim.setAutonomous((mode & InputRecorder.kAutonomousBit) != 0);
+        DriverStationSim.setTest((mode & InputRecorder.kTestBit) != 0);
+
+        applyJoystick(Constants.kDriverUSB, record, 1);
+        applyJoystick(Constants.kSecondaryUSB, record, 1 + InputRecorder.kJoystickSize);
+    }
+
+    private static void applyJoystick(int port, byte[] record, int offset) {
+        for (int axis = 0; axis < InputRecorder.kAxes; axis++) {
+            DriverStationSim.setJoystickAxis(port, axis, InputRecorder.decodeAxis(record[offset + axis]));
+        }
+
+        DriverStationSim.setJoystickButtons(port, InputRecorder.decodeButtons(record, offset));
+    }
+
+    private static void updateChecksum(CRC32 checksum, long bits) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            checksum.update((int) (bits >>> shift));
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants;
+import frc.robot.util.LoopWatchdog;
+import frc.robot.util.StageTimer;
+
+/*
+ * MatchSimulationTest plays a whole match against the real Robot class in simulation, and fails
+ * if the robot loop got too expensive, or started creating too much garbage for the Java garbage
+ * collector to clean up.
+ *
+ * The match is: kDisabledSeconds disabled, 15 seconds of autonomous (running whatever
+ * getAutonomousCommand returns), then 135 seconds of teleop with scripted joystick inputs that
+ * press every button bound in RobotContainer.configureBindings, presets and macros included (see
+ * scriptTeleop). kBoundCommands lists the command each of those buttons starts, and the match
+ * fails if any of them never ran. The simulator's clock is paused and stepped by SimHarness, so
+ * the match itself takes a fraction of a second.
+ *
+ * "./gradlew test" runs this, so any change to a subsystem or binding that pushes the loop over
+ * one of the limits below fails the build. If a limit needs to change, change it here on purpose,
+ * don't just raise it until the build passes.
+ *
+ * Loop cost is measured as the CPU time the robot loop's thread used, not wall time, so a busy
+ * build machine (or a garbage collection on another thread) doesn't fail the build. The limits are
+ * loose enough for a slow machine, they're there to catch a loop that got many times more
+ * expensive, not a few percent. The worst single loop gets a few milliseconds, well inside the
+ * 20ms period, so one slow loop fails the build long before it would overrun on the robot.
+ *
+ * The whole match (from the first loop to the last, not starting the robot up) also has to play
+ * in under kMaxMatchWallSeconds of real time. That one is wall time, it's what keeps
+ * "./gradlew test" quick, and it's what catches the simulation itself (stepping the clock, the
+ * Notifiers on their own threads) getting slow.
+ *
+ * Every subsystem command, plus our own telemetry and the lead screw fast loop, must allocate
+ * nothing at all (0 bytes) for the whole teleop period once kAllocationWarmupSeconds have passed,
+ * as counted by each StageTimer (see util/AllocationProbe.java). Only the VisionPipeline stage
+ * (OpenCV, on its own thread, not the robot loop's) and the physics models' stages (the ones named
+ * "...Sim", which only exist in simulation and step WPILib's models) are left out, and the
+ * Scheduler and RobotPeriodic stages get the per loop limits below instead.
+ *
+ * The Scheduler stage (the whole CommandScheduler run, which includes every command and the
+ * button banks) can't get to 0, because WPILib doesn't let it. For every subsystem's periodic()
+ * and every command it runs, the scheduler's loop watchdog builds a name for the time it took
+ * ("Arm.periodic()", "Intake.execute()") and boxes the time into a Long, and it and the command
+ * groups walk their sets with iterators. A proxy (see RobotContainer.intakeMacro) asks the
+ * scheduler whether its command is still running with a method that takes an array. None of that
+ * grows with anything but the number of subsystems and commands, so in every teleop loop where no
+ * command started or ended, the Scheduler stage (less the physics models, which the scheduler
+ * runs too) gets kMaxSchedulerBytesPerLoop, plus kMaxSchedulerBytesPerEpoch for each subsystem
+ * and each command that ran, and not a byte more.
+ *
+ * The rest of the loop is held to those same steady teleop loops. Everything in robotPeriodic
+ * outside the Scheduler stage (the inputs, telemetry, camera and log) must allocate 0 bytes in
+ * every one of them, whether or not it's inside a StageTimer of its own, so nothing new can creep
+ * in between the stages. What WPILib does around robotPeriodic (reading the driver station,
+ * updating every dashboard widget, the simulator's own hooks) gets kMaxWpilibBytesPerLoop.
+ * Loops where a command starts or ends (or a macro prints its timing breakdown, or the loop
+ * overran and the watchdog sent its breakdown) are left out, those happen once per button press
+ * or once in a while, not every loop.
+ *
+ * The first kSettleCycles loops after each mode change are left out of the loop numbers, those
+ * loops do one-time setup (like building the autonomous command) that isn't part of the steady
+ * state we're guarding.
+ */
+public class MatchSimulationTest {
+    public static final double kDisabledSeconds = 3;
+    public static final double kAutonomousSeconds = 15;
+    public static final double kTeleopSeconds = 135;
+
+    public static final int kSettleCycles = 10;
+    public static final double kAllocationWarmupSeconds = 2;
+
+    // Stages that run off the robot loop's thread, and so are allowed to allocate
+    private static final List<String> kAllocatingStages = List.of("VisionPipeline");
+    // Stages with a per loop limit instead of 0, see schedulerAllocationIsBounded and robotCodeDoesNotAllocate
+    private static final List<String> kBoundedStages = List.of("Scheduler", "RobotPeriodic");
+    private static final String kSimulationStageSuffix = "Sim";
+
+    // Drivetrain, LeadScrew, Arm, HeadPivot, HeadRollers and PowerArbiter
+    public static final int kSubsystems = 6;
+    public static final long kMaxSchedulerBytesPerEpoch = 256; //The watchdog's name and Long, plus a group's or proxy's share
+    public static final long kMaxSchedulerBytesPerLoop = 512; //Iterators over the scheduler's own sets
+    public static final long kMaxWpilibBytesPerLoop = 1024; //The choosers' option arrays and an iterator per dashboard widget
+
+    // Every command a button starts, by name, see RobotContainer.configureBindings
+    private static final List<String> kBoundCommands = List.of(
+        "LeadScrew Up", "LeadScrew Down", "LeadScrew Shift HIGH", "LeadScrew Shift LOW", "LeadScrew AutoShift",
+        "HeadRollers In", "HeadRollers Out",
+        "Arm STOW", "Arm FLOOR_PICKUP", "Arm SCORE", "HeadPivot STOW", "HeadPivot FLOOR_PICKUP", "HeadPivot SCORE",
+        "Intake", "Stow",
+        "Drivetrain FieldOriented", "Drivetrain AlignToTarget");
+
+    // The macros publish their total time once each time they're done, see util/MacroTimer.java
+    private static final List<String> kMacros = List.of("Intake", "Stow");
+
+    public static final double kMaxMeanLoopCpuMicros = 1000;
+    public static final double kMaxWorstLoopCpuMicros = 4000;
+    public static final double kMaxMatchWallSeconds = 1;
+
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static SimulatedRobot robot;
+
+    private static double meanLoopCpuMicros;
+    private static double worstLoopCpuMicros;
+    private static double matchWallSeconds;
+    private static double meanAllocatedBytes;
+    private static long[] stageAllocationStart;
+    private static long[] stageAllocationEnd;
+
+    private static int schedulerEvents;
+    private static int executedCommands;
+    private static final Set<String> teleopCommands = new HashSet<>();
+    private static int steadySchedulerLoops;
+    private static int schedulerOverLimitLoops;
+    private static String schedulerOverLimitExample;
+    private static int robotCodeAllocatingLoops;
+    private static String robotCodeAllocatingExample;
+    private static int wpilibOverLimitLoops;
+    private static String wpilibOverLimitExample;
+
+    /*
+     * The match is played once, and every test below checks a different number from it
+     */
+    @BeforeAll
+    static void playMatch() {
+        robot = SimHarness.startRobot();
+        double period = robot.getPeriod();
+
+        /*
+         * These run inside the scheduler, so they only count, they don't create anything. The
+         * names are only collected in teleop, when a command is starting anyway.
+         */
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        scheduler.onCommandInitialize(command -> {
+            schedulerEvents++;
+            if (DriverStation.isTeleopEnabled()) {
+                teleopCommands.add(command.getName());
+            }
+        });
+        scheduler.onCommandFinish(command -> schedulerEvents++);
+        scheduler.onCommandInterrupt(command -> schedulerEvents++);
+        scheduler.onCommandExecute(command -> executedCommands++);
+
+        StageTimer schedulerTimer = findStage("Scheduler");
+        StageTimer robotPeriodicTimer = findStage("RobotPeriodic");
+        LoopWatchdog watchdog = robot.getRobotContainer().getLoopWatchdog();
+        List<StageTimer> simulationTimers = new ArrayList<>();
+        for (StageTimer stage : StageTimer.getAll()) {
+            if (stage.getName().endsWith(kSimulationStageSuffix)) {
+                simulationTimers.add(stage);
+            }
+        }
+
+        DoubleSubscriber[] macroReports = new DoubleSubscriber[kMacros.size()];
+        for (int i = 0; i < macroReports.length; i++) {
+            macroReports[i] = NetworkTableInstance.getDefault().getTable("Macros").getSubTable(kMacros.get(i))
+                .getDoubleTopic("TotalMs").subscribe(0);
+        }
+
+        int disabledCycles = (int) Math.round(kDisabledSeconds / period);
+        int autonomousCycles = (int) Math.round(kAutonomousSeconds / period);
+        int teleopCycles = (int) Math.round(kTeleopSeconds / period);
+        int totalCycles = disabledCycles + autonomousCycles + teleopCycles;
+        int allocationStartCycle = disabledCycles + autonomousCycles + (int) Math.round(kAllocationWarmupSeconds / period);
+
+        long totalLoopCpuNanos = 0;
+        long worstLoopCpuNanos = 0;
+        long totalAllocatedBytes = 0;
+        int measuredCycles = 0;
+        int cyclesInMode = 0;
+        boolean lastEnabled = false;
+        boolean lastAutonomous = false;
+
+        long matchStart = System.nanoTime();
+
+        for (int cycle = 0; cycle < totalCycles; cycle++) {
+            boolean enabled = cycle >= disabledCycles;
+            boolean autonomous = enabled && cycle < disabledCycles + autonomousCycles;
+
+            SimHarness.setMode(enabled, autonomous);
+            if (enabled != lastEnabled || autonomous != lastAutonomous) {
+                cyclesInMode = 0;
+            }
+            lastEnabled = enabled;
+            lastAutonomous = autonomous;
+
+            if (enabled && !autonomous) {
+                scriptTeleop((cycle - disabledCycles - autonomousCycles) * period);
+            }
+
+            if (cycle == allocationStartCycle) {
+                stageAllocationStart = stageAllocations();
+            }
+
+            /*
+             * This is SimHarness.cycle, taken apart so only the robot loop itself is measured, and
+             * not stepTiming waiting for the Notifiers on their own threads
+             */
+            DriverStationSim.notifyNewData();
+
+            long schedulerStart = schedulerTimer.getAllocatedBytes() - sumAllocatedBytes(simulationTimers);
+            long robotCodeStart = robotPeriodicTimer.getAllocatedBytes() - schedulerTimer.getAllocatedBytes();
+            long robotPeriodicStart = robotPeriodicTimer.getAllocatedBytes();
+            long overrunsStart = watchdog.getOverruns();
+            int eventsStart = schedulerEvents;
+            executedCommands = 0;
+
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long allocatedStart = threads.getCurrentThreadAllocatedBytes();
+
+            robot.step();
+
+            long loopCpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+            long allocatedBytes = threads.getCurrentThreadAllocatedBytes() - allocatedStart;
+
+            long schedulerBytes = schedulerTimer.getAllocatedBytes() - sumAllocatedBytes(simulationTimers) - schedulerStart;
+            long robotCodeBytes = robotPeriodicTimer.getAllocatedBytes() - schedulerTimer.getAllocatedBytes() - robotCodeStart;
+            long wpilibBytes = allocatedBytes - (robotPeriodicTimer.getAllocatedBytes() - robotPeriodicStart);
+            boolean macroReported = false;
+            for (DoubleSubscriber report : macroReports) {
+                macroReported |= report.readQueueValues().length > 0;
+            }
+
+            boolean steady = cycle >= allocationStartCycle && schedulerEvents == eventsStart && !macroReported
+                && watchdog.getOverruns() == overrunsStart;
+            if (steady) {
+                long limit = kMaxSchedulerBytesPerLoop + (kSubsystems + executedCommands) * kMaxSchedulerBytesPerEpoch;
+                double teleopSeconds = (cycle - disabledCycles - autonomousCycles) * period;
+                steadySchedulerLoops++;
+
+                if (schedulerBytes > limit) {
+                    schedulerOverLimitLoops++;
+                    if (schedulerOverLimitExample == null) {
+                        schedulerOverLimitExample = String.format("%d bytes with %d commands running at %.2f s into teleop, limit %d",
+                            schedulerBytes, executedCommands, teleopSeconds, limit);
+                    }
+                }
+
+                if (robotCodeBytes != 0) {
+                    robotCodeAllocatingLoops++;
+                    if (robotCodeAllocatingExample == null) {
+                        robotCodeAllocatingExample = String.format("%d bytes at %.2f s into teleop", robotCodeBytes, teleopSeconds);
+                    }
+                }
+
+                if (wpilibBytes > kMaxWpilibBytesPerLoop) {
+                    wpilibOverLimitLoops++;
+                    if (wpilibOverLimitExample == null) {
+                        wpilibOverLimitExample = String.format("%d bytes at %.2f s into teleop, limit %d",
+                            wpilibBytes, teleopSeconds, kMaxWpilibBytesPerLoop);
+                    }
+                }
+            }
+
+            SimHooks.stepTiming(period);
+
+            if (enabled && cyclesInMode >= kSettleCycles) {
+                totalLoopCpuNanos += loopCpuNanos;
+                worstLoopCpuNanos = Math.max(worstLoopCpuNanos, loopCpuNanos);
+                totalAllocatedBytes += allocatedBytes;
+                measuredCycles++;
+            }
+            cyclesInMode++;
+        }
+
+        matchWallSeconds = (System.nanoTime() - matchStart) / 1e9;
+        stageAllocationEnd = stageAllocations();
+
+        for (DoubleSubscriber report : macroReports) {
+            report.close();
+        }
+
+        meanLoopCpuMicros = totalLoopCpuNanos / 1e3 / measuredCycles;
+        worstLoopCpuMicros = worstLoopCpuNanos / 1e3;
+        meanAllocatedBytes = (double) totalAllocatedBytes / measuredCycles;
+
+        System.out.printf("Match took %.3f s. Loop CPU time: mean %.1f us, worst %.1f us. Allocated: mean %.1f bytes per loop%n",
+            matchWallSeconds, meanLoopCpuMicros, worstLoopCpuMicros, meanAllocatedBytes);
+    }
+
+    @AfterAll
+    static void closeRobot() {
+        robot.close();
+    }
+
+    @Test
+    void meanLoopCpuTimeIsUnderLimit() {
+        assertTrue(meanLoopCpuMicros <= kMaxMeanLoopCpuMicros,
+            String.format("Mean loop CPU time %.1f us, limit %.1f us", meanLoopCpuMicros, kMaxMeanLoopCpuMicros));
+    }
+
+    @Test
+    void worstLoopCpuTimeIsUnderLimit() {
+        assertTrue(worstLoopCpuMicros <= kMaxWorstLoopCpuMicros,
+            String.format("Worst loop CPU time %.1f us, limit %.1f us", worstLoopCpuMicros, kMaxWorstLoopCpuMicros));
+    }
+
+    @Test
+    void matchPlaysFasterThanLimit() {
+        assertTrue(matchWallSeconds <= kMaxMatchWallSeconds,
+            String.format("Match took %.3f s, limit %.3f s", matchWallSeconds, kMaxMatchWallSeconds));
+    }
+
+    @Test
+    void robotCodeDoesNotAllocate() {
+        assertTrue(steadySchedulerLoops > 0, "No teleop loops without a command starting or ending");
+        assertTrue(robotCodeAllocatingLoops == 0,
+            String.format("robotPeriodic allocated outside the Scheduler stage in %d of %d loops, first: %s",
+                robotCodeAllocatingLoops, steadySchedulerLoops, robotCodeAllocatingExample));
+    }
+
+    @Test
+    void wpilibAllocationIsBounded() {
+        assertTrue(steadySchedulerLoops > 0, "No teleop loops without a command starting or ending");
+        assertTrue(wpilibOverLimitLoops == 0,
+            String.format("WPILib's part of the loop allocated too much in %d of %d loops, first: %s",
+                wpilibOverLimitLoops, steadySchedulerLoops, wpilibOverLimitExample));
+    }
+
+    @Test
+    void stagesDoNotAllocate() {
+        List<StageTimer> stages = StageTimer.getAll();
+        StringBuilder failures = new StringBuilder();
+
+        for (int i = 0; i < stageAllocationStart.length; i++) {
+            String name = stages.get(i).getName();
+            long bytes = stageAllocationEnd[i] - stageAllocationStart[i];
+
+            boolean allowed = kAllocatingStages.contains(name) || kBoundedStages.contains(name)
+                || name.endsWith(kSimulationStageSuffix);
+            if (!allowed && bytes != 0) {
+                failures.append(String.format("%n    %s allocated %d bytes", name, bytes));
+            }
+        }
+
+        assertTrue(failures.length() == 0, "Stages allocated during teleop:" + failures);
+    }
+
+    @Test
+    void schedulerAllocationIsBounded() {
+        assertTrue(steadySchedulerLoops > 0, "No teleop loops without a command starting or ending");
+        assertTrue(schedulerOverLimitLoops == 0,
+            String.format("Scheduler allocated too much in %d of %d loops, first: %s",
+                schedulerOverLimitLoops, steadySchedulerLoops, schedulerOverLimitExample));
+    }
+
+    @Test
+    void everyBindingRan() {
+        StringBuilder missing = new StringBuilder();
+
+        for (String name : kBoundCommands) {
+            if (!teleopCommands.contains(name)) {
+                missing.append(String.format("%n    %s", name));
+            }
+        }
+
+        assertTrue(missing.length() == 0, "Bound commands the teleop script never started:" + missing);
+    }
+
+    private static StageTimer findStage(String name) {
+        for (StageTimer stage : StageTimer.getAll()) {
+            if (stage.getName().equals(name)) {
+                return stage;
+            }
+        }
+
+        throw new IllegalStateException("No StageTimer named " + name);
+    }
+
+    private static long sumAllocatedBytes(List<StageTimer> stages) {
+        long bytes = 0;
+        for (StageTimer stage : stages) {
+            bytes += stage.getAllocatedBytes();
+        }
+        return bytes;
+    }
+
+    private static long[] stageAllocations() {
+        List<StageTimer> stages = StageTimer.getAll();
+        long[] bytes = new long[stages.size()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = stages.get(i).getAllocatedBytes();
+        }
+
+        return bytes;
+    }
+
+    /*
+     * Teleop inputs: the driver drives a slow figure eight, and the operator works through every
+     * binding on a 20 second cycle. The arm and head joysticks are only moved in the first half,
+     * moving them ends a preset, so the presets and macros in the second half get to run.
+     */
+    private static void scriptTeleop(double t) {
+        double phase = t % 20;
+
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 1, -.6 * Math.sin(t / 3));
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 0, .4 * Math.sin(t / 1.5));
+        DriverStationSim.setJoystickAxis(Constants.kDriverUSB, 2, .3 * Math.cos(t / 2));
+        setDriverButton(Constants.kFieldOrientedButton, phase >= 5 && phase < 5.1);
+        setDriverButton(Constants.kAlignToTargetButton, phase >= 7 && phase < 9);
+
+        boolean manual = phase < 10;
+        DriverStationSim.setJoystickAxis(Constants.kSecondaryUSB, Constants.kArmUpDownAxis, manual ? .8 * Math.sin(t) : 0);
+        DriverStationSim.setJoystickAxis(Constants.kSecondaryUSB, Constants.kHeadUpDownAxis, manual ? .5 * Math.cos(t) : 0);
+
+        setButton(Constants.kLeadScrewUpButton, phase < 3);
+        setButton(Constants.kLeadScrewDownButton, phase >= 3 && phase < 6);
+        setButton(Constants.kShifterHighButton, phase >= 1 && phase < 1.1);
+        setButton(Constants.kShifterLowButton, phase >= 4 && phase < 4.1);
+        setButton(Constants.kHeadRollersInButton, phase >= 6 && phase < 8);
+        setButton(Constants.kHeadRollersOutButton, phase >= 8 && phase < 9.5);
+
+        // Auto-shift goes on here, and stays on until the next cycle's shift button turns it off
+        setButton(Constants.kAutoShiftButton, phase >= 9.5 && phase < 9.6);
+
+        setButton(Constants.kScorePresetButton, phase >= 10 && phase < 10.1);
+        setButton(Constants.kFloorPickupPresetButton, phase >= 12 && phase < 12.1);
+        setButton(Constants.kStowPresetButton, phase >= 14 && phase < 14.1);
+        setButton(Constants.kIntakeMacroButton, phase >= 15 && phase < 17.5);
+        setButton(Constants.kStowMacroButton, phase >= 17.6 && phase < 17.7);
+    }
+
+    private static void setButton(int button, boolean pressed) {
+        DriverStationSim.setJoystickButton(Constants.kSecondaryUSB, button, pressed);
+    }
+
+    private static void setDriverButton(int button, boolean pressed) {
+        DriverStationSim.setJoystickButton(Constants.kDriverUSB, button, pressed);
+    }
+}
@@ -0,0 +1,63 @@
+package frc.robot.sim;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Constants;
+
+/*
+ * SimHarness has the shared setup for running the robot code headless in simulation, with
+ * the simulator's clock under our control instead of running in real time.
+ *
+ * The usual pattern is:
+ *
+ *   SimulatedRobot robot = SimHarness.startRobot();
+ *   SimHarness.setMode(true, false); // enabled teleop
+ *   for each loop:
+ *     set joystick values with DriverStationSim
+ *     SimHarness.cycle(robot);
+ *
+ * cycle() runs one robot loop, then moves the simulator's clock forward by one loop period
+ * with SimHooks.stepTiming. stepTiming also waits for every Notifier that came due (like the
+ * lead screw fast loop) to finish running, so a simulation plays out the same way every time.
+ */
+public final class SimHarness {
+    public static final int kJoystickAxes = 6;
+    public static final int kJoystickButtons = 12;
+
+    private SimHarness() {}
+
+    public static SimulatedRobot startRobot() {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setTest(false);
+
+        for (int port : new int[] {Constants.kDriverUSB, Constants.kSecondaryUSB}) {
+            DriverStationSim.setJoystickAxisCount(port, kJoystickAxes);
+            DriverStationSim.setJoystickButtonCount(port, kJoystickButtons);
+        }
+
+        DriverStationSim.notifyNewData();
+
+        SimulatedRobot robot = new SimulatedRobot();
+        robot.robotInit();
+        robot.simulationInit();
+
+        return robot;
+    }
+
+    public static void setMode(boolean enabled, boolean autonomous) {
+        DriverStationSim.setEnabled(enabled);
+        DriverStationSim.setAutonomous(autonomous);
+    }
+
+    public static void cycle(SimulatedRobot robot) {
+        DriverStationSim.notifyNewData();
+        robot.step();
+        SimHooks.stepTiming(robot.getPeriod());
+    }
+}
@@ -0,0 +1,14 @@
+package frc.robot.sim;
+
+import frc.robot.Robot;
+
+/*
+ * SimulatedRobot is the real Robot, with one extra method that runs exactly one pass of the
+ * robot loop. Normally TimedRobot decides when the loop runs, here the simulation tools decide,
+ * which is what lets a whole match run in a couple of seconds.
+ */
+public class SimulatedRobot extends Robot {
+    public void step() {
+        loopFunc();
+    }
+}
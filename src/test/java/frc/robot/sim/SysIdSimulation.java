@@ -0,0 +1,61 @@
+package frc.robot.sim;
+
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.RobotContainer;
+
+/*
+ * SysIdSimulation runs every characterization test (see util/SysIdRecorder.java) against the
+ * physics models, headless and faster than real time. Run it with "./gradlew simulateSysId".
+ *
+ * The robot is put in test mode and each test runs to the end, one after the other, with
+ * kSettleSeconds in between so the mechanism comes to a stop first. Afterwards it prints where
+ * the log file went, which can be opened in the SysId tool like one from the real robot.
+ *
+ * The models only move once per robot loop (every 20ms), so the samples taken in between
+ * repeat the same position. That's fine for checking the tests and the SysId tool work end to
+ * end, but the gains it comes up with are the models' gains, not the robot's.
+ */
+public final class SysIdSimulation {
+    public static final double kSettleSeconds = 1;
+
+    private SysIdSimulation() {}
+
+    public static void main(String... args) throws InterruptedException {
+        SimulatedRobot robot = SimHarness.startRobot();
+        RobotContainer container = robot.getRobotContainer();
+        int settleCycles = (int) Math.round(kSettleSeconds / robot.getPeriod());
+
+        // A few disabled loops first, so the dashboard gets set up like it would before a match
+        for (int cycle = 0; cycle < settleCycles; cycle++) {
+            SimHarness.cycle(robot);
+        }
+
+        DriverStationSim.setTest(true);
+        SimHarness.setMode(true, false);
+
+        for (Command command : container.getSysIdCommands()) {
+            for (int cycle = 0; cycle < settleCycles; cycle++) {
+                SimHarness.cycle(robot);
+            }
+
+            CommandScheduler.getInstance().schedule(command);
+            do {
+                SimHarness.cycle(robot);
+            } while (command.isScheduled());
+
+            // The samples are saved on their own thread, wait for that before the next test
+            while (container.getSysIdRecorder().isBusy()) {
+                Thread.sleep(1);
+            }
+        }
+
+        DataLogManager.getLog().flush();
+        System.out.printf("SysId logs are in %s%n", DataLogManager.getLogDir());
+
+        robot.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,145 @@
+package frc.robot.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import edu.wpi.first.cscore.OpenCvLoader;
+import frc.robot.camera.TargetDetector;
+
+/*
+ * VisionReplay runs the game piece detector over a folder of saved camera images, the same way
+ * the VisionPipeline runs it over live frames, and reports what it found and how long each image
+ * took to process.
+ *
+ * Run it with "./gradlew replayVision -Pimages=<folder>". Every .png and .jpg in the folder is
+ * processed, in name order.
+ *
+ * If the folder also has an "expected.csv", each line of it ("image name,true or false,targetX")
+ * says what the detector should find in that image. Any image that doesn't match (a missed or
+ * extra target, or targetX off by more than kTargetXTolerance) is reported, and the program
+ * exits with an error, so a set of recorded images works as a check that a change to the
+ * detector or its HSV range didn't break it.
+ *
+ * A small set of made-up images (an orange game piece in a few places, other colors, and a speck
+ * too small to count) with their expected.csv is kept in src/test/resources/vision. That's the
+ * folder replayVision uses when -Pimages isn't given, and VisionReplayTest checks it on every
+ * "./gradlew test".
+ */
+public final class VisionReplay {
+    public static final double kTargetXTolerance = .1;
+
+    private VisionReplay() {}
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: VisionReplay <image folder>");
+            System.exit(2);
+        }
+
+        System.exit(replay(new File(args[0])) == 0 ? 0 : 1);
+    }
+
+    /*
+     * Processes every image in folder and prints what was found, returns how many images didn't
+     * match expected.csv (or couldn't be read, or if there were no images at all)
+     */
+    public static int replay(File folder) throws IOException {
+        OpenCvLoader.forceLoad();
+
+        File[] images = listImages(folder);
+        if (images.length == 0) {
+            System.err.println("No images in " + folder);
+            return 1;
+        }
+
+        Map<String, String[]> expected = readExpected(new File(folder, "expected.csv"));
+
+        TargetDetector detector = new TargetDetector();
+        List<Long> nanos = new ArrayList<>();
+        int failures = 0;
+
+        for (File image : images) {
+            Mat frame = Imgcodecs.imread(image.getPath());
+            if (frame.empty()) {
+                System.out.printf("%-32s could not be read%n", image.getName());
+                failures++;
+                continue;
+            }
+
+            long start = System.nanoTime();
+            boolean found = detector.process(frame);
+            nanos.add(System.nanoTime() - start);
+            frame.release();
+
+            String result = "";
+            String[] expect = expected.get(image.getName());
+            if (expect != null) {
+                boolean expectFound = Boolean.parseBoolean(expect[1].trim());
+                boolean ok = found == expectFound
+                    && (!found || Math.abs(detector.getTargetX() - Double.parseDouble(expect[2].trim())) <= kTargetXTolerance);
+
+                result = ok ? "ok" : "MISMATCH";
+                if (!ok) {
+                    failures++;
+                }
+            }
+
+            System.out.printf("%-32s target %-5s x %6.3f area %.4f  %s%n",
+                image.getName(), found, detector.getTargetX(), detector.getTargetArea(), result);
+        }
+
+        if (!nanos.isEmpty()) {
+            long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+
+            System.out.printf("Processed %d images: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                sorted.length,
+                sorted[(int) Math.ceil(.5 * sorted.length) - 1] / 1e6,
+                sorted[(int) Math.ceil(.99 * sorted.length) - 1] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+        }
+
+        return failures;
+    }
+
+    /*
+     * Every .png and .jpg in folder, in name order
+     */
+    static File[] listImages(File folder) {
+        File[] images = folder.listFiles((dir, name) -> {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+        });
+
+        if (images == null) {
+            return new File[0];
+        }
+        Arrays.sort(images);
+
+        return images;
+    }
+
+    static Map<String, String[]> readExpected(File file) throws IOException {
+        Map<String, String[]> expected = new HashMap<>();
+        if (!file.exists()) {
+            return expected;
+        }
+
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] parts = line.split(",");
+            if (parts.length >= 3 && !line.startsWith("#")) {
+                expected.put(parts[0].trim(), parts);
+            }
+        }
+
+        return expected;
+    }
+}
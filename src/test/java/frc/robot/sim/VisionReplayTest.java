@@ -0,0 +1,38 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * VisionReplayTest runs the game piece detector over the test images in
+ * src/test/resources/vision (see VisionReplay.java), and fails if it doesn't find what
+ * expected.csv says it should in every one of them. So a change to TargetDetector, or to the HSV
+ * range in Constants, that stops it seeing the game piece (or makes it see one that isn't there)
+ * fails the build.
+ */
+public class VisionReplayTest {
+    private static File folder() throws Exception {
+        return new File(VisionReplayTest.class.getResource("/vision").toURI());
+    }
+
+    @Test
+    void everyImageHasAnExpectedResult() throws Exception {
+        File[] images = VisionReplay.listImages(folder());
+        Map<String, String[]> expected = VisionReplay.readExpected(new File(folder(), "expected.csv"));
+
+        assertTrue(images.length > 0, "No test images in " + folder());
+        for (File image : images) {
+            assertTrue(expected.containsKey(image.getName()), image.getName() + " has no line in expected.csv");
+        }
+    }
+
+    @Test
+    void detectionsMatchExpected() throws Exception {
+        assertEquals(0, VisionReplay.replay(folder()), "Images where the detector didn't find what expected.csv says");
+    }
+}